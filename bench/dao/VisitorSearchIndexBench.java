@@ -0,0 +1,80 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.util.Locale;
+import java.util.Random;
+import utility.Bench;
+
+/**
+ * First-page search latency of {@link VisitorSearchIndex} against the
+ * LIKE '%x%' path it replaces. The index is filled with generated
+ * visitors (500,000 by default) through {@link VisitorSearchIndex#add};
+ * the build time and heap it takes are printed first.
+ *
+ * Without a database, the LIKE path is stood in for by a scan of the same
+ * texts in memory, which is a lower bound for the full table scan MySQL
+ * does. With "sql", each query also runs through {@link VisitorSearch}
+ * against the configured database; the index is never built in this
+ * process, so that is the LIKE fallback over the real userdetails table.
+ *
+ * Args: [visitors] [sql].
+ *
+ * @author ASUS
+ */
+public class VisitorSearchIndexBench {
+
+    private static final String[] FIRST = {"Aarav", "Priya", "Rahul", "Sneha", "John", "Maria", "Wei", "Fatima", "Ivan", "Olga", "Kenji", "Lucas"};
+    private static final String[] LAST = {"Sharma", "Patel", "Smith", "Garcia", "Chen", "Khan", "Petrov", "Tanaka", "Silva", "Kumar", "Brown", "Nguyen"};
+    private static final String[] COMPANY = {"Acme", "Globex", "Initech", "Umbrella", "Hooli", "Stark", "Wayne", "Tyrell"};
+    private static final String[] QUERIES = {"petrov 4711", "4711", "tanaka", "zzz", "ar", "globex corp", "9001234"};
+    private static final int PAGE = 200;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        boolean sql = args.length > 1 && args[1].equals("sql");
+
+        Random random = new Random(1);
+        VisitorSearchIndex index = new VisitorSearchIndex();
+        String[] texts = new String[count];
+        long start = System.nanoTime();
+        for (int id = 1; id <= count; id++) {
+            String name = FIRST[random.nextInt(FIRST.length)] + " " + LAST[random.nextInt(LAST.length)] + " " + id;
+            String email = name.toLowerCase(Locale.ROOT).replace(' ', '.') + "@mail.com";
+            String contact = String.valueOf(9_000_000_000L + random.nextInt(999_999_999));
+            String company = COMPANY[random.nextInt(COMPANY.length)] + " Corp";
+            index.add(new Visitor(id, name, "M", email, contact, "", company, "IN", "R" + id, null));
+            texts[id - 1] = (name + '\u0001' + email + '\u0001' + contact + '\u0001' + company).toLowerCase(Locale.ROOT);
+        }
+        System.out.printf("%d visitors indexed in %d ms, heap with texts %.0f MB%n", count,
+                (System.nanoTime() - start) / 1_000_000, Bench.usedHeapMb());
+
+        for (String query : QUERIES) {
+            System.out.printf("\"%s\": %d hits on the first page%n", query, index.search(query, 0, PAGE).length);
+            Bench.measure("  index", 2000, i -> index.search(query, 0, PAGE));
+            Bench.measure("  scan in memory", 20, i -> scan(texts, query));
+            if (sql) {
+                Bench.measure("  LIKE via VisitorSearch", 5, i -> {
+                    VisitorSearch search = new VisitorSearch(query);
+                    search.count();
+                    return search.fetch(0, PAGE);
+                });
+            }
+        }
+    }
+
+    /**
+     * What LIKE does without an index: every row until the page is full.
+     */
+    private static int scan(String[] texts, String query) {
+        int found = 0;
+        for (String text : texts) {
+            if (text.contains(query) && ++found == PAGE) {
+                break;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeWriter;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import utility.Bench;
+
+/**
+ * Garbage and time per webcam frame: a fresh ZXing reader, luminance
+ * source, binarizer and bitmap per frame, as MarkVisit used to decode,
+ * against one {@link QrDecoder} reused across frames with either strategy.
+ * The frame is a 1280x720 BGR image, the default webcam view size, with
+ * a badge in the middle.
+ *
+ * Args: [frames per round], default 300.
+ *
+ * @author ASUS
+ */
+public class QrDecoderBench {
+
+    private static final String PAYLOAD = "VMS2:9IX:1:0F3A9C41D27B5E6680A1C3F4";
+
+    public static void main(String[] args) throws Exception {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        BufferedImage frame = frame(1280, 720);
+
+        QrDecoder full = new QrDecoder(false, QrDecoder.Strategy.FULL_FRAME, new StrategyStats("roi"), new StrategyStats("full"));
+        QrDecoder roi = new QrDecoder(false, QrDecoder.Strategy.ROI_THEN_FULL, new StrategyStats("roi"), new StrategyStats("full"));
+        if (!PAYLOAD.equals(full.decode(frame)) || !PAYLOAD.equals(roi.decode(frame))) {
+            throw new IllegalStateException("The test frame does not decode");
+        }
+
+        Bench.measure("new reader per frame", frames, i -> new MultiFormatReader().decode(
+                new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(frame)))).getText());
+        Bench.measure("QrDecoder FULL_FRAME", frames, i -> full.decode(frame));
+        Bench.measure("QrDecoder ROI_THEN_FULL", frames, i -> roi.decode(frame));
+    }
+
+    private static BufferedImage frame(int width, int height) throws Exception {
+        BitMatrix matrix = new QRCodeWriter().encode(PAYLOAD, BarcodeFormat.QR_CODE, 300, 300);
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = frame.createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, width, height);
+        g.drawImage(MatrixToImageWriter.toBufferedImage(matrix), (width - 300) / 2, (height - 300) / 2, null);
+        g.dispose();
+        return frame;
+    }
+}
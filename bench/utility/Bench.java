@@ -0,0 +1,77 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the harnesses under bench/. A case runs once to warm up, then
+ * vms.bench.rounds (3) more times, and prints per round the time and the
+ * bytes the calling thread allocated per operation. Results go to a sink
+ * the JIT cannot see through, so the work is not optimized away.
+ *
+ * Run a harness with "ant bench -Dbench.class=&lt;class&gt;"; bench/ is not
+ * part of the jar.
+ *
+ * @author ASUS
+ */
+public class Bench {
+
+    private static final int ROUNDS = Integer.getInteger("vms.bench.rounds", 3);
+
+    private static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * One operation; {@code i} counts from 0 within a round.
+     */
+    public interface Op {
+
+        Object run(int i) throws Exception;
+    }
+
+    public static volatile Object sink;
+
+    /**
+     * Runs {@code ops} operations per round and returns the best time per
+     * operation, in microseconds.
+     */
+    public static double measure(String name, int ops, Op op) throws Exception {
+        for (int i = 0; i < ops; i++) {
+            sink = op.run(i);
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 1; round <= ROUNDS; round++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                sink = op.run(i);
+            }
+            double micros = (System.nanoTime() - start) / 1e3 / ops;
+            bytes = allocatedBytes() - bytes;
+            System.out.printf("%-44s round %d: %10.1f us/op %10d B/op%n", name, round, micros, bytes / ops);
+            best = Math.min(best, micros);
+        }
+        return best;
+    }
+
+    /**
+     * Bytes allocated by the calling thread so far.
+     */
+    public static long allocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Heap in use after a full collection, in MB.
+     */
+    public static double usedHeapMb() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1e6;
+    }
+}
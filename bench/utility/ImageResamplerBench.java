@@ -0,0 +1,94 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import javax.imageio.ImageIO;
+
+/**
+ * Time and quality of downscaling at the sizes the forms use:
+ * getScaledInstance(SCALE_SMOOTH), as BDUtility used to, a single
+ * bilinear draw, and {@link ImageResampler}. Quality is the PSNR against
+ * the SCALE_SMOOTH result, in dB; above about 30 dB the difference is hard
+ * to see.
+ *
+ * Args: pairs of image file and target size, e.g. "photo.jpg 332x286";
+ * by default the sample photos and wallpapers in src/.
+ *
+ * @author ASUS
+ */
+public class ImageResamplerBench {
+
+    private interface Scaler {
+
+        BufferedImage scale(BufferedImage source, int width, int height);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] cases = args.length > 0 ? args : new String[]{
+            "src/images/vko@gmail.com.jpg", "332x286",
+            "src/images/demo1@demo1.jpg", "285x285",
+            "src/utility/images/abc1.png", "1376x768",
+            "src/utility/images/abc1.png", "880x500",
+            "src/utility/images/login-background.png", "765x706"};
+        for (int c = 0; c + 1 < cases.length; c += 2) {
+            File file = new File(cases[c]);
+            BufferedImage source = ImageIO.read(file);
+            if (source == null) {
+                throw new IllegalArgumentException("Not an image: " + file);
+            }
+            String[] size = cases[c + 1].split("x");
+            int width = Integer.parseInt(size[0]);
+            int height = Integer.parseInt(size[1]);
+            int ops = (long) source.getWidth() * source.getHeight() > 4_000_000 ? 5 : 10;
+            BufferedImage reference = smooth(source, width, height);
+
+            System.out.printf("%s %dx%d -> %dx%d%n", file.getName(), source.getWidth(), source.getHeight(), width, height);
+            Bench.measure("  getScaledInstance(SCALE_SMOOTH)", ops, i -> smooth(source, width, height));
+            Bench.measure(String.format("  single bilinear, %.1f dB", psnr(reference, bilinear(source, width, height))),
+                    ops, i -> bilinear(source, width, height));
+            Bench.measure(String.format("  ImageResampler, %.1f dB", psnr(reference, ImageResampler.resize(source, width, height))),
+                    ops, i -> ImageResampler.resize(source, width, height));
+        }
+    }
+
+    private static BufferedImage smooth(BufferedImage source, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.drawImage(source.getScaledInstance(width, height, Image.SCALE_SMOOTH), 0, 0, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private static BufferedImage bilinear(BufferedImage source, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private static double psnr(BufferedImage a, BufferedImage b) {
+        double squaredError = 0;
+        long samples = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int p = a.getRGB(x, y);
+                int q = b.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int d = ((p >> shift) & 0xff) - ((q >> shift) & 0xff);
+                    squaredError += d * d;
+                    samples++;
+                }
+            }
+        }
+        return squaredError == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255 / (squaredError / samples));
+    }
+}
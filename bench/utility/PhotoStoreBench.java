@@ -0,0 +1,91 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Lookup and listing in {@link PhotoStore} against the flat images/
+ * folder it replaced, plus the cost of storing a photo. The first run
+ * fills vms.bench.photoDir (photostore-bench in the temp directory) with
+ * one photo per visitor both ways, through {@link PhotoStore#put}, which
+ * takes a while at a million; later runs reuse it, so a run right after
+ * dropping the OS file cache measures cold lookups.
+ *
+ * Args: [visitors], default 100000.
+ *
+ * @author ASUS
+ */
+public class PhotoStoreBench {
+
+    private static final File DIR = new File(System.getProperty("vms.bench.photoDir",
+            new File(System.getProperty("java.io.tmpdir"), "photostore-bench").getPath()));
+    private static final int LOOKUPS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        File flat = new File(DIR, "flat-" + count);
+        PhotoStore store = new PhotoStore(new File(DIR, "store-" + count));
+        populate(count, flat, store);
+
+        Random random = new Random(1);
+        int[] ids = new int[LOOKUPS];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt(count);
+        }
+        Bench.measure("flat folder: stat by email", LOOKUPS, i -> {
+            File file = new File(flat, "visitor" + ids[i] + "@example.com.png");
+            return file.lastModified() + file.length();
+        });
+        Bench.measure("store: manifest + stat", LOOKUPS, i -> {
+            File file = store.avatar(ids[i]);
+            return file.lastModified() + file.length();
+        });
+        Bench.measure("store: manifest only", LOOKUPS, i -> store.master(ids[i]));
+
+        Bench.measure("flat folder: list", 1, i -> flat.list().length);
+        Bench.measure("store: ids from the manifest", 1, i -> store.ids().length);
+
+        byte[] avatar = new byte[20_000];
+        random.nextBytes(avatar);
+        Bench.measure("store: put a new photo", 50, i -> {
+            byte[] master = new byte[60_000];
+            random.nextBytes(master);
+            store.put(count + i, master, avatar);
+            return master;
+        });
+        byte[] same = new byte[60_000];
+        random.nextBytes(same);
+        Bench.measure("store: put a photo already stored", 50, i -> {
+            store.put(count + i, same, avatar);
+            return same;
+        });
+        System.out.println(store);
+    }
+
+    private static void populate(int count, File flat, PhotoStore store) throws Exception {
+        File done = new File(DIR, "populated-" + count);
+        if (done.isFile()) {
+            return;
+        }
+        Files.createDirectories(flat.toPath());
+        // Visitors share one avatar, so the count of files is about that of the flat folder.
+        byte[] avatar = "avatar".getBytes(StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        for (int id = 0; id < count; id++) {
+            byte[] photo = ("photo-" + id).getBytes(StandardCharsets.UTF_8);
+            Files.write(new File(flat, "visitor" + id + "@example.com.png").toPath(), photo);
+            store.put(id, photo, avatar);
+            if (id > 0 && id % 100_000 == 0) {
+                System.out.println(id + " photos stored in " + (System.nanoTime() - start) / 1_000_000_000 + " s");
+            }
+        }
+        Files.createFile(done.toPath());
+        System.out.println(count + " photos stored in " + (System.nanoTime() - start) / 1_000_000_000 + " s");
+    }
+}
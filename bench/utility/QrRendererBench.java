@@ -0,0 +1,54 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import javax.imageio.ImageIO;
+import net.glxn.qrgen.core.image.ImageType;
+import net.glxn.qrgen.javase.QRCode;
+
+/**
+ * Latency and bytes allocated per badge code: QRGen's PNG stream decoded
+ * again for the preview, as GenerateQr used to, against
+ * {@link QrRenderer} for the preview and for saving. Payloads have the
+ * length of a signed badge and cycle through ten visitors.
+ *
+ * Args: [codes per round], default 2000.
+ *
+ * @author ASUS
+ */
+public class QrRendererBench {
+
+    public static void main(String[] args) throws Exception {
+        int codes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String[] payloads = new String[10];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = BadgePayload.SIGNED_PREFIX + Integer.toString(120_000 + i, 36).toUpperCase() + ":1:0F3A9C41D27B5E6680A" + i;
+        }
+        QrRenderer renderer = QrRenderer.fromConfig();
+
+        BufferedImage preview = renderer.render(payloads[0]);
+        String decoded = new MultiFormatReader().decode(new BinaryBitmap(new HybridBinarizer(
+                new BufferedImageLuminanceSource(preview)))).getText();
+        if (!payloads[0].equals(decoded)) {
+            throw new IllegalStateException("The rendered code does not decode");
+        }
+        System.out.printf("preview %dx%d, PNG %d bytes (QRGen %d bytes)%n", preview.getWidth(), preview.getHeight(),
+                QrRenderer.encodePng(preview).length,
+                QRCode.from(payloads[0]).withSize(322, 286).to(ImageType.PNG).stream().size());
+
+        Bench.measure("QRGen PNG decoded for preview (old)", codes, i -> ImageIO.read(new ByteArrayInputStream(
+                QRCode.from(payloads[i % 10]).withSize(322, 286).to(ImageType.PNG).stream().toByteArray())));
+        Bench.measure("QrRenderer preview", codes, i -> renderer.render(payloads[i % 10]));
+        Bench.measure("QRGen PNG for saving (old)", codes, i -> QRCode.from(payloads[i % 10])
+                .withSize(322, 286).to(ImageType.PNG).stream());
+        Bench.measure("QrRenderer PNG for saving", codes, i -> QrRenderer.encodePng(renderer.render(payloads[i % 10])));
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Check-in/check-out transitions on userattendance. Each scan is a single
+ * INSERT ... ON DUPLICATE KEY UPDATE against the unique (userid, date) key,
+ * so concurrent or repeated scans of the same badge cannot create a second
+ * row for the day.
+ *
+ * Scans taken while the database was unreachable are applied later by
+ * {@link #reconcile}, which merges a scan into the row the same way
+ * whatever order the kiosks' scans arrive in.
+ *
+ * @author ASUS
+ */
+public class AttendanceDao {
+
+    public static final Duration MINIMUM_VISIT = Duration.ofMinutes(5);
+
+    // workduration is assigned before checkout because MySQL applies the
+    // assignments left to right and both conditions read the old checkout.
+    static final String MARK_SQL = "INSERT INTO userattendance (userid, date, checkin) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE "
+            + "workduration = IF(checkout IS NULL AND checkin <= ?, "
+            + "CONCAT(TIMESTAMPDIFF(HOUR, checkin, ?), ' Hours and ', MOD(TIMESTAMPDIFF(MINUTE, checkin, ?), 60), ' Minutes'), "
+            + "workduration), "
+            + "checkout = IF(checkout IS NULL AND checkin <= ?, ?, checkout)";
+
+    /**
+     * Records a scan at {@code now}: checks the visitor in if this is the
+     * first scan of the day, checks them out once the minimum visit has
+     * passed, and otherwise leaves the row untouched.
+     */
+    public static AttendanceResult mark(int userId, LocalDateTime now) throws SQLException {
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            return mark(con, userId, now);
+        }
+    }
+
+    /**
+     * {@link #mark(int, LocalDateTime)} on a connection the caller holds.
+     */
+    static AttendanceResult mark(Connection con, int userId, LocalDateTime now) throws SQLException {
+        int affected;
+        try (PreparedStatement ps = con.prepareStatement(MARK_SQL)) {
+            bind(ps, userId, now);
+            // Affected rows (useAffectedRows=true): 1 inserted, 2 updated, 0 unchanged.
+            affected = ps.executeUpdate();
+        }
+        if (affected == 1) {
+            return new AttendanceResult(AttendanceResult.State.CHECKED_IN, now.withNano(0), null, null);
+        }
+
+        LocalDateTime[] row = read(con, userId, now.toLocalDate());
+        if (row == null) {
+            throw new SQLException("Attendance row for user " + userId + " disappeared");
+        }
+        if (affected == 2) {
+            return new AttendanceResult(AttendanceResult.State.CHECKED_OUT, row[0], row[1], null);
+        }
+        return predict(row[0], row[1], now);
+    }
+
+    /**
+     * Sets the parameters of {@link #MARK_SQL} for a scan at {@code now}.
+     */
+    static void bind(PreparedStatement ps, int userId, LocalDateTime now) throws SQLException {
+        Timestamp nowTs = Timestamp.valueOf(now.withNano(0));
+        Timestamp latestCheckIn = Timestamp.valueOf(now.withNano(0).minus(MINIMUM_VISIT));
+        ps.setInt(1, userId);
+        ps.setDate(2, Date.valueOf(now.toLocalDate()));
+        ps.setTimestamp(3, nowTs);
+        ps.setTimestamp(4, latestCheckIn);
+        ps.setTimestamp(5, nowTs);
+        ps.setTimestamp(6, nowTs);
+        ps.setTimestamp(7, latestCheckIn);
+        ps.setTimestamp(8, nowTs);
+    }
+
+    /**
+     * The visitor's check-in and check-out (null until they leave) on a
+     * date, or null if they have no row for it.
+     */
+    static LocalDateTime[] read(Connection con, int userId, LocalDate date) throws SQLException {
+        try (PreparedStatement read = con.prepareStatement("select checkin, checkout from userattendance where userid=? and date=?")) {
+            read.setInt(1, userId);
+            read.setDate(2, Date.valueOf(date));
+            try (ResultSet rs = read.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Timestamp checkOut = rs.getTimestamp("checkout");
+                return new LocalDateTime[]{rs.getTimestamp("checkin").toLocalDateTime(),
+                    checkOut == null ? null : checkOut.toLocalDateTime()};
+            }
+        }
+    }
+
+    /**
+     * What {@link #MARK_SQL} does to a row with the given check-in and
+     * check-out (both null for no row) for a scan at {@code now}, worked
+     * out without the database. Applying a scan twice changes nothing the
+     * second time, as in the database.
+     */
+    static AttendanceResult predict(LocalDateTime checkIn, LocalDateTime checkOut, LocalDateTime now) {
+        now = now.withNano(0);
+        if (checkIn == null) {
+            return new AttendanceResult(AttendanceResult.State.CHECKED_IN, now, null, null);
+        }
+        if (checkOut != null) {
+            return new AttendanceResult(AttendanceResult.State.ALREADY_CHECKED_OUT, checkIn, checkOut, null);
+        }
+        if (!checkIn.isAfter(now.minus(MINIMUM_VISIT))) {
+            return new AttendanceResult(AttendanceResult.State.CHECKED_OUT, checkIn, now, null);
+        }
+        Duration remaining = Duration.between(now, checkIn.plus(MINIMUM_VISIT));
+        return new AttendanceResult(AttendanceResult.State.TOO_EARLY, checkIn, null,
+                remaining.isNegative() ? Duration.ZERO : remaining);
+    }
+
+    /**
+     * Merges a scan at {@code now} into the visitor's row for its date and
+     * returns 1 if the scan is now the check-in, 2 if it is now the
+     * check-out and 0 if it changed nothing, as {@link #MARK_SQL} would have
+     * for a scan in order. Call inside a transaction.
+     */
+    static int reconcile(Connection con, int userId, LocalDateTime now) throws SQLException {
+        now = now.withNano(0);
+        try (PreparedStatement insert = con.prepareStatement("INSERT IGNORE INTO userattendance (userid, date, checkin) VALUES (?, ?, ?)")) {
+            insert.setInt(1, userId);
+            insert.setDate(2, Date.valueOf(now.toLocalDate()));
+            insert.setTimestamp(3, Timestamp.valueOf(now));
+            if (insert.executeUpdate() == 1) {
+                return 1;
+            }
+        }
+        LocalDateTime checkIn;
+        LocalDateTime checkOut;
+        try (PreparedStatement lock = con.prepareStatement("select checkin, checkout from userattendance where userid=? and date=? for update")) {
+            lock.setInt(1, userId);
+            lock.setDate(2, Date.valueOf(now.toLocalDate()));
+            try (ResultSet rs = lock.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Attendance row for user " + userId + " disappeared");
+                }
+                Timestamp in = rs.getTimestamp("checkin");
+                Timestamp out = rs.getTimestamp("checkout");
+                checkIn = in == null ? null : in.toLocalDateTime();
+                checkOut = out == null ? null : out.toLocalDateTime();
+            }
+        }
+        LocalDateTime[] merged = merge(checkIn, checkOut, now);
+        if (!merged[0].equals(checkIn) || !Objects.equals(merged[1], checkOut)) {
+            try (PreparedStatement update = con.prepareStatement(
+                    "update userattendance set checkin=?, checkout=?, workduration=? where userid=? and date=?")) {
+                update.setTimestamp(1, Timestamp.valueOf(merged[0]));
+                update.setTimestamp(2, merged[1] == null ? null : Timestamp.valueOf(merged[1]));
+                update.setString(3, merged[1] == null ? null : workDuration(merged[0], merged[1]));
+                update.setInt(4, userId);
+                update.setDate(5, Date.valueOf(now.toLocalDate()));
+                update.executeUpdate();
+            }
+        }
+        return now.equals(merged[0]) ? 1 : now.equals(merged[1]) ? 2 : 0;
+    }
+
+    /**
+     * The check-in and check-out of a row (both null for no row) once a
+     * scan at {@code now} is merged in: the earliest scan is the check-in
+     * and the earliest one at least {@link #MINIMUM_VISIT} after it is the
+     * check-out. For scans in time order this is what {@link #predict}
+     * gives; out of order, a late check-in moves the check-in earlier and
+     * may turn the old check-in into the check-out.
+     */
+    static LocalDateTime[] merge(LocalDateTime checkIn, LocalDateTime checkOut, LocalDateTime now) {
+        now = now.withNano(0);
+        if (checkIn == null) {
+            return new LocalDateTime[]{now, null};
+        }
+        LocalDateTime first = now.isBefore(checkIn) ? now : checkIn;
+        LocalDateTime earliestOut = first.plus(MINIMUM_VISIT);
+        LocalDateTime out = null;
+        for (LocalDateTime scan : new LocalDateTime[]{checkIn, checkOut, now}) {
+            if (scan != null && !scan.isBefore(earliestOut) && (out == null || scan.isBefore(out))) {
+                out = scan;
+            }
+        }
+        return new LocalDateTime[]{first, out};
+    }
+
+    /**
+     * The workduration text {@link #MARK_SQL} writes, e.g. "1 Hours and 5
+     * Minutes".
+     */
+    static String workDuration(LocalDateTime checkIn, LocalDateTime checkOut) {
+        Duration duration = Duration.between(checkIn, checkOut);
+        return duration.toHours() + " Hours and " + duration.toMinutes() % 60 + " Minutes";
+    }
+}
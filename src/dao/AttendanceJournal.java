@@ -0,0 +1,649 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind log of check-ins and check-outs. A scan is confirmed as
+ * soon as its event is forced to the local journal; the "AttendanceJournal
+ * Flusher" thread then applies events to userattendance in batches of up
+ * to vms.attendance.batchSize (500), one transaction each.
+ *
+ * The journal is a directory (vms.attendance.journalDir) of memory-mapped
+ * segment files of vms.attendance.segmentBytes (1 MB), holding 32-byte
+ * records: sequence, event time, visitor id, kind and a CRC. On open the
+ * segments are read up to the first record that is missing or fails its
+ * CRC, so an event torn by a crash was never confirmed and is dropped.
+ *
+ * Each journal has a random id, and attendance_journal holds the last
+ * sequence applied from it, updated in the same transaction as the batch.
+ * After a crash the flusher starts again from there, so every event is
+ * applied exactly once. Segments are deleted once all their events are
+ * applied.
+ *
+ * What a visitor is shown is worked out here from their row, read once a
+ * day, and the events since, by {@link AttendanceDao#predict}. Should
+ * another kiosk have scanned them in between, the database still applies
+ * each event to the real row; such disagreements are counted.
+ *
+ * While the database cannot be reached, scans keep being confirmed: a
+ * visitor's row comes from the {@link OfflineSnapshot} instead, and their
+ * events are marked offline. Once the database is back, offline events are
+ * applied one at a time with {@link AttendanceDao#reconcile}, which gives
+ * the same row whatever order kiosks reconcile in; scans that end up
+ * other than as shown are counted as conflicts. The time from the first
+ * successful flush after an outage to an empty queue is reported as the
+ * reconciliation time.
+ *
+ * @author ASUS
+ */
+public class AttendanceJournal {
+
+    static final File DIR = new File(System.getProperty("vms.attendance.journalDir",
+            System.getProperty("user.home") + File.separator + "vms-journal"));
+    private static final int SEGMENT_BYTES = Integer.getInteger("vms.attendance.segmentBytes", 1 << 20);
+    private static final int BATCH_SIZE = Integer.getInteger("vms.attendance.batchSize", 500);
+    private static final long FLUSH_MILLIS = Long.getLong("vms.attendance.flushMillis", 200L);
+    private static final long MAX_RETRY_MILLIS = 10_000L;
+
+    private static final int RECORD_BYTES = 32;
+    private static final int KIND_CHECK_IN = 1;
+    private static final int KIND_CHECK_OUT = 2;
+    private static final int OFFLINE = 0x100;
+
+    private static AttendanceJournal instance;
+
+    /**
+     * One journalled scan that changed the visitor's row.
+     */
+    static class Event {
+
+        final long seq;
+        final int userId;
+        final LocalDateTime time;
+        final int kind;
+
+        Event(long seq, int userId, LocalDateTime time, int kind) {
+            this.seq = seq;
+            this.userId = userId;
+            this.time = time;
+            this.kind = kind;
+        }
+
+        /**
+         * {@link #KIND_CHECK_IN} or {@link #KIND_CHECK_OUT}.
+         */
+        int type() {
+            return kind & ~OFFLINE;
+        }
+
+        /**
+         * Whether the scan was shown without the visitor's row in hand, so
+         * has to be reconciled.
+         */
+        boolean isOffline() {
+            return (kind & OFFLINE) != 0;
+        }
+    }
+
+    /**
+     * A visitor's row for today as this kiosk believes it to be.
+     */
+    private static class Day {
+
+        LocalDateTime checkIn;
+        LocalDateTime checkOut;
+        /** Read from the offline snapshot rather than the database. */
+        final boolean offline;
+
+        Day(LocalDateTime checkIn, LocalDateTime checkOut, boolean offline) {
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
+            this.offline = offline;
+        }
+    }
+
+    private static class Segment {
+
+        final File file;
+        final long firstSeq;
+        final MappedByteBuffer buffer;
+
+        Segment(File file, long firstSeq, MappedByteBuffer buffer) {
+            this.file = file;
+            this.firstSeq = firstSeq;
+            this.buffer = buffer;
+        }
+
+        long endSeq() {
+            return firstSeq + buffer.capacity() / RECORD_BYTES;
+        }
+    }
+
+    private final File dir;
+    private final String journalId;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final List<Segment> segments = new ArrayList<>();
+    /** Applied segments whose file is still mapped, so could not be deleted yet. */
+    private final List<File> retired = new ArrayList<>();
+    private final ArrayDeque<Event> pending = new ArrayDeque<>();
+    private final Map<Integer, Day> days = new HashMap<>();
+    private LocalDate today = null;
+    private long nextSeq;
+    private volatile long appliedSeq = 0;
+    private final Thread flusher;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong appendNanos = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong disagreements = new AtomicLong();
+    private final AtomicLong reconciled = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private long outageStartedAt = 0;
+    private long reconcileStartedAt = 0;
+    private volatile long lastOutageMillis = 0;
+    private volatile long lastReconcileMillis = 0;
+
+    /**
+     * The kiosk's journal, opened and recovered on first use.
+     */
+    public static synchronized AttendanceJournal getInstance() throws IOException {
+        if (instance == null) {
+            instance = new AttendanceJournal(DIR);
+            instance.start();
+        }
+        return instance;
+    }
+
+    AttendanceJournal(File dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir.toPath());
+        journalId = readOrCreateId();
+        nextSeq = recover();
+        flusher = new Thread(this::flushLoop, "AttendanceJournal Flusher");
+        flusher.setDaemon(true);
+    }
+
+    void start() {
+        flusher.start();
+    }
+
+    /**
+     * Records a scan at {@code now} and returns what the visitor should be
+     * shown. When the scan checks them in or out, its event is on disk
+     * before this returns. May read the visitor's row from the database
+     * the first time they are scanned in a day, or from the offline
+     * snapshot if it cannot be reached.
+     */
+    public AttendanceResult mark(int userId, LocalDateTime now) throws IOException {
+        now = now.withNano(0);
+        Day day = day(userId, now.toLocalDate());
+        synchronized (this) {
+            AttendanceResult result = AttendanceDao.predict(day.checkIn, day.checkOut, now);
+            int offline = day.offline || !ConnectionProvider.isOnline() ? OFFLINE : 0;
+            switch (result.getState()) {
+                case CHECKED_IN:
+                    append(userId, now, KIND_CHECK_IN | offline);
+                    day.checkIn = now;
+                    break;
+                case CHECKED_OUT:
+                    append(userId, now, KIND_CHECK_OUT | offline);
+                    day.checkOut = now;
+                    break;
+                default:
+                    break;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The visitor's day, read from the database and brought up to date
+     * with the events not yet applied. Replaying an event that is already
+     * in the row changes nothing, so it does not matter which those are.
+     * When the database cannot be reached, the row is the one in the
+     * offline snapshot, if any, until the database is back.
+     */
+    private Day day(int userId, LocalDate date) {
+        synchronized (this) {
+            if (!date.equals(today)) {
+                days.clear();
+                today = date;
+            }
+            Day day = days.get(userId);
+            // A day from the snapshot is read again once the database is back.
+            if (day != null && !(day.offline && ConnectionProvider.isOnline())) {
+                return day;
+            }
+        }
+        LocalDateTime[] row;
+        boolean offline = false;
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            row = AttendanceDao.read(con, userId, date);
+        } catch (SQLException ex) {
+            row = OfflineSnapshot.getInstance().attendance(userId, date);
+            offline = true;
+        }
+        synchronized (this) {
+            Day day = days.get(userId);
+            if ((day == null || day.offline && !offline) && date.equals(today)) {
+                day = row == null ? new Day(null, null, offline) : new Day(row[0], row[1], offline);
+                for (Event event : pending) {
+                    if (event.userId == userId && event.time.toLocalDate().equals(date)) {
+                        AttendanceResult replayed = AttendanceDao.predict(day.checkIn, day.checkOut, event.time);
+                        day.checkIn = replayed.getCheckIn();
+                        day.checkOut = replayed.getCheckOut();
+                    }
+                }
+                days.put(userId, day);
+            }
+            return day != null ? day : new Day(row == null ? null : row[0], row == null ? null : row[1], offline);
+        }
+    }
+
+    /**
+     * Writes an event to the current segment and forces it to disk.
+     * Called with the lock held.
+     */
+    private void append(int userId, LocalDateTime time, int kind) throws IOException {
+        long start = System.nanoTime();
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || nextSeq >= segment.endSeq()) {
+            segment = createSegment(nextSeq);
+            segments.add(segment);
+        }
+        int at = (int) (nextSeq - segment.firstSeq) * RECORD_BYTES;
+        long millis = time.atZone(zone).toInstant().toEpochMilli();
+        segment.buffer.put(at, encode(nextSeq, millis, userId, kind));
+        segment.buffer.force(at, RECORD_BYTES);
+        pending.addLast(new Event(nextSeq, userId, time, kind));
+        nextSeq++;
+        appended.incrementAndGet();
+        appendNanos.addAndGet(System.nanoTime() - start);
+        notifyAll();
+    }
+
+    private static byte[] encode(long seq, long millis, int userId, int kind) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putLong(seq).putLong(millis).putInt(userId).putInt(kind);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, 24);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    private Segment createSegment(long firstSeq) throws IOException {
+        File file = new File(dir, String.format("segment-%020d.log", firstSeq));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(SEGMENT_BYTES);
+            return new Segment(file, firstSeq, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES));
+        }
+    }
+
+    /**
+     * Deletes the segments the database already holds, maps the others,
+     * queues their events not yet applied as pending and returns the next
+     * sequence. Without a database every segment is kept and replayed; the
+     * flusher skips what was applied.
+     */
+    private long recover() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("segment-") && name.endsWith(".log"));
+        long next = 1;
+        if (files == null) {
+            return next;
+        }
+        Arrays.sort(files);
+        long last = storedLastSeq();
+        appliedSeq = last;
+        byte[] record = new byte[RECORD_BYTES];
+        CRC32 crc = new CRC32();
+        for (File file : files) {
+            String name = file.getName();
+            long firstSeq = Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+            // Left behind when it could not be deleted while mapped; if it
+            // still cannot be, it is tried again on the next start.
+            if (firstSeq + file.length() / RECORD_BYTES <= last + 1) {
+                file.delete();
+                continue;
+            }
+            Segment segment;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                segment = new Segment(file, firstSeq, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length()));
+            }
+            segments.add(segment);
+            next = firstSeq;
+            // Records are forced one at a time, so only the last one written can be torn.
+            for (int at = 0; at + RECORD_BYTES <= segment.buffer.capacity(); at += RECORD_BYTES) {
+                segment.buffer.get(at, record);
+                ByteBuffer r = ByteBuffer.wrap(record);
+                long seq = r.getLong();
+                long millis = r.getLong();
+                int userId = r.getInt();
+                int kind = r.getInt();
+                crc.reset();
+                crc.update(record, 0, 24);
+                if (seq != next || r.getInt() != (int) crc.getValue()) {
+                    break;
+                }
+                if (seq > last) {
+                    pending.addLast(new Event(seq, userId, LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone), kind));
+                }
+                next++;
+            }
+        }
+        // Sequences carry on after the applied ones even if every segment was deleted.
+        return Math.max(next, last + 1);
+    }
+
+    /**
+     * The last sequence applied from this journal, or 0 if the database
+     * cannot be reached.
+     */
+    private long storedLastSeq() {
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con != null) {
+                try (PreparedStatement ps = con.prepareStatement("select last_seq from attendance_journal where journal_id = ?")) {
+                    ps.setString(1, journalId);
+                    ResultSet rs = ps.executeQuery();
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+        return 0;
+    }
+
+    private String readOrCreateId() throws IOException {
+        File file = new File(dir, "journal.id");
+        if (file.isFile()) {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim();
+        }
+        String id = UUID.randomUUID().toString();
+        File temp = new File(dir, "journal.id.tmp");
+        Files.write(temp.toPath(), id.getBytes(StandardCharsets.US_ASCII));
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    private void flushLoop() {
+        long retryMillis = FLUSH_MILLIS;
+        while (true) {
+            try {
+                List<Event> batch;
+                synchronized (this) {
+                    while (pending.isEmpty()) {
+                        wait();
+                    }
+                }
+                // Let a burst of scans gather into one batch.
+                Thread.sleep(FLUSH_MILLIS);
+                synchronized (this) {
+                    batch = new ArrayList<>(Math.min(pending.size(), BATCH_SIZE));
+                    for (Event event : pending) {
+                        if (batch.size() == BATCH_SIZE) {
+                            break;
+                        }
+                        batch.add(event);
+                    }
+                }
+                try {
+                    flush(batch);
+                    retryMillis = FLUSH_MILLIS;
+                    reconciling();
+                } catch (SQLException ex) {
+                    failedFlushes.incrementAndGet();
+                    // Report an outage once, not on every retry.
+                    if (outageStartedAt == 0) {
+                        outageStartedAt = System.currentTimeMillis();
+                        ex.printStackTrace();
+                    }
+                    Thread.sleep(retryMillis);
+                    retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Times reconciliation after an outage: it starts with the first flush
+     * that succeeds and ends when no events are left. The times are read
+     * through the getters and {@link #toString()}. Called by the flusher.
+     */
+    private void reconciling() {
+        long now = System.currentTimeMillis();
+        if (outageStartedAt != 0 && reconcileStartedAt == 0) {
+            reconcileStartedAt = now;
+            lastOutageMillis = now - outageStartedAt;
+        }
+        if (reconcileStartedAt != 0 && getLag() == 0) {
+            lastReconcileMillis = now - reconcileStartedAt;
+            outageStartedAt = 0;
+            reconcileStartedAt = 0;
+        }
+    }
+
+    /**
+     * Applies the events after the journal's last applied sequence in one
+     * transaction, then forgets them and deletes finished segments. A
+     * batch with offline events is applied one event at a time.
+     */
+    void flush(List<Event> batch) throws SQLException {
+        long start = System.nanoTime();
+        long last;
+        int count = 0;
+        List<Integer> stale = new ArrayList<>();
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            con.setAutoCommit(false);
+            try {
+                try (PreparedStatement claim = con.prepareStatement(
+                        "INSERT IGNORE INTO attendance_journal (journal_id, last_seq, updated_at) VALUES (?, 0, NOW())")) {
+                    claim.setString(1, journalId);
+                    claim.executeUpdate();
+                }
+                try (PreparedStatement lock = con.prepareStatement("select last_seq from attendance_journal where journal_id = ? for update")) {
+                    lock.setString(1, journalId);
+                    ResultSet rs = lock.executeQuery();
+                    rs.next();
+                    last = rs.getLong(1);
+                }
+
+                List<Event> applying = new ArrayList<>(batch.size());
+                boolean offline = false;
+                for (Event event : batch) {
+                    if (event.seq > last) {
+                        applying.add(event);
+                        offline |= event.isOffline();
+                    }
+                }
+                if (!applying.isEmpty()) {
+                    // 1 inserted or now the check-in, 2 now the check-out, 0 unchanged.
+                    int[] affected = offline ? applyOneByOne(con, applying) : applyBatch(con, applying);
+                    for (int i = 0; i < affected.length; i++) {
+                        Event event = applying.get(i);
+                        if (event.isOffline()) {
+                            reconciled.incrementAndGet();
+                            // The row may hold scans from other kiosks this one has not seen.
+                            stale.add(event.userId);
+                        }
+                        if (affected[i] >= 0 && affected[i] != event.type()) {
+                            (event.isOffline() ? conflicts : disagreements).incrementAndGet();
+                            stale.add(event.userId);
+                        }
+                    }
+                    last = applying.get(applying.size() - 1).seq;
+                    try (PreparedStatement advance = con.prepareStatement(
+                            "update attendance_journal set last_seq = ?, updated_at = NOW() where journal_id = ?")) {
+                        advance.setLong(1, last);
+                        advance.setString(2, journalId);
+                        advance.executeUpdate();
+                    }
+                    count = applying.size();
+                }
+                con.commit();
+            } catch (SQLException ex) {
+                con.rollback();
+                throw ex;
+            }
+        }
+        applied.addAndGet(count);
+        batches.incrementAndGet();
+        flushNanos.addAndGet(System.nanoTime() - start);
+        markApplied(Math.max(last, batch.get(batch.size() - 1).seq), stale);
+    }
+
+    private static int[] applyBatch(Connection con, List<Event> events) throws SQLException {
+        try (PreparedStatement mark = con.prepareStatement(AttendanceDao.MARK_SQL)) {
+            for (Event event : events) {
+                AttendanceDao.bind(mark, event.userId, event.time);
+                mark.addBatch();
+            }
+            return mark.executeBatch();
+        }
+    }
+
+    /**
+     * Reconciles offline events and applies the others as usual, in order.
+     */
+    private static int[] applyOneByOne(Connection con, List<Event> events) throws SQLException {
+        int[] affected = new int[events.size()];
+        try (PreparedStatement mark = con.prepareStatement(AttendanceDao.MARK_SQL)) {
+            for (int i = 0; i < affected.length; i++) {
+                Event event = events.get(i);
+                if (event.isOffline()) {
+                    affected[i] = AttendanceDao.reconcile(con, event.userId, event.time);
+                } else {
+                    AttendanceDao.bind(mark, event.userId, event.time);
+                    affected[i] = mark.executeUpdate();
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Forgets applied events and deletes finished segments. A segment's
+     * file cannot be deleted on Windows while it is still mapped; it is
+     * tried again on later flushes and, failing that, by the next
+     * {@link #recover}. Visitors whose row turned out different from what
+     * was shown are read again on their next scan.
+     */
+    private synchronized void markApplied(long seq, List<Integer> stale) {
+        appliedSeq = Math.max(appliedSeq, seq);
+        for (Integer userId : stale) {
+            days.remove(userId);
+        }
+        while (!pending.isEmpty() && pending.peekFirst().seq <= appliedSeq) {
+            pending.removeFirst();
+        }
+        // Keep the segment being written to.
+        while (segments.size() > 1 && segments.get(0).endSeq() <= appliedSeq + 1) {
+            retired.add(segments.remove(0).file);
+        }
+        retired.removeIf(file -> file.delete() || !file.exists());
+    }
+
+    /**
+     * Events confirmed to visitors but not yet in the database.
+     */
+    public synchronized int getLag() {
+        return pending.size();
+    }
+
+    /**
+     * How long the oldest event not yet in the database has waited, in
+     * milliseconds; 0 when there is none.
+     */
+    public synchronized long getLagMillis() {
+        Event oldest = pending.peekFirst();
+        return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.time.atZone(zone).toInstant().toEpochMilli());
+    }
+
+    /**
+     * Events confirmed while the database could not be reached and not yet
+     * reconciled.
+     */
+    public synchronized int getOfflineLag() {
+        int count = 0;
+        for (Event event : pending) {
+            if (event.isOffline()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * How long the last outage lasted, from the first failed flush to the
+     * first one that succeeded, in milliseconds; 0 if there has been none.
+     */
+    public long getLastOutageMillis() {
+        return lastOutageMillis;
+    }
+
+    /**
+     * How long the last reconciliation after an outage took, in
+     * milliseconds; 0 if there has been none.
+     */
+    public long getLastReconcileMillis() {
+        return lastReconcileMillis;
+    }
+
+    /**
+     * Events applied per second of time spent flushing.
+     */
+    public double getFlushThroughput() {
+        long nanos = flushNanos.get();
+        return nanos == 0 ? 0 : applied.get() * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        long count = appended.get();
+        return String.format("AttendanceJournal[appended=%d, avgAppendMicros=%d, lag=%d, lagMillis=%d, applied=%d, batches=%d, "
+                + "flushThroughput=%.0f/s, failedFlushes=%d, disagreements=%d, offlineLag=%d, reconciled=%d, conflicts=%d, "
+                + "lastOutageMillis=%d, lastReconcileMillis=%d]",
+                count, count == 0 ? 0 : appendNanos.get() / count / 1000, getLag(), getLagMillis(), applied.get(),
+                batches.get(), getFlushThroughput(), failedFlushes.get(), disagreements.get(), getOfflineLag(),
+                reconciled.get(), conflicts.get(), lastOutageMillis, lastReconcileMillis);
+    }
+}
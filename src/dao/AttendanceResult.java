@@ -0,0 +1,58 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of recording one scan in userattendance.
+ *
+ * @author ASUS
+ */
+public class AttendanceResult {
+
+    public enum State {
+        CHECKED_IN, CHECKED_OUT, TOO_EARLY, ALREADY_CHECKED_OUT
+    }
+
+    private final State state;
+    private final LocalDateTime checkIn;
+    private final LocalDateTime checkOut;
+    private final Duration remaining;
+
+    public AttendanceResult(State state, LocalDateTime checkIn, LocalDateTime checkOut, Duration remaining) {
+        this.state = state;
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+        this.remaining = remaining;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public LocalDateTime getCheckIn() {
+        return checkIn;
+    }
+
+    public LocalDateTime getCheckOut() {
+        return checkOut;
+    }
+
+    /**
+     * Time between check-in and check-out, or null before check-out.
+     */
+    public Duration getWorkDuration() {
+        return checkOut == null ? null : Duration.between(checkIn, checkOut);
+    }
+
+    /**
+     * Time left until check-out is allowed, only set for {@link State#TOO_EARLY}.
+     */
+    public Duration getRemaining() {
+        return remaining;
+    }
+}
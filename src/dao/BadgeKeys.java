@@ -0,0 +1,331 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.swing.JOptionPane;
+
+/**
+ * HMAC keys for signing badges, stored in badge_keys so every kiosk shares
+ * them. New badges are signed with the newest key that is not retired;
+ * older keys keep verifying until they are retired, which is how keys are
+ * rotated.
+ *
+ * Keys are cached by key id for vms.badge.keyCacheTtlMillis, including
+ * ids that are unknown or retired so a forged id does not cost a query per
+ * scan. Each thread keeps its own initialised Mac per key id, so verifying
+ * is a single doFinal. When the database cannot be reached, a key whose
+ * cached copy has expired is used as it was, and keys no kiosk has cached
+ * come from the {@link OfflineSnapshot}.
+ *
+ * Run this class to rotate the signing key, or with "retire &lt;kid&gt;" to
+ * retire one.
+ *
+ * @author ASUS
+ */
+public class BadgeKeys {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SECRET_BYTES = 32;
+    private static final int MAX_CACHED_KEYS = 16;
+    private static final long CACHE_TTL_MILLIS = Long.getLong("vms.badge.keyCacheTtlMillis", 300_000L);
+
+    private static final BadgeKeys INSTANCE = new BadgeKeys();
+
+    /**
+     * A cached key; {@code spec} is null when the id is unknown or retired.
+     */
+    private static class Key {
+
+        final int kid;
+        final SecretKeySpec spec;
+        final long loadedAt;
+
+        Key(int kid, SecretKeySpec spec) {
+            this(kid, spec, System.currentTimeMillis());
+        }
+
+        Key(int kid, SecretKeySpec spec, long loadedAt) {
+            this.kid = kid;
+            this.spec = spec;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() - loadedAt < CACHE_TTL_MILLIS;
+        }
+    }
+
+    private final LinkedHashMap<Integer, Key> keys = new LinkedHashMap<Integer, Key>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Key> eldest) {
+            return size() > MAX_CACHED_KEYS;
+        }
+    };
+    private volatile Key signingKey = null;
+    private final ThreadLocal<Map<Integer, Mac>> macs = ThreadLocal.withInitial(HashMap::new);
+    private final SecureRandom random = new SecureRandom();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong staleUses = new AtomicLong();
+
+    public static BadgeKeys getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Id of the key new badges are signed with, creating the first key if
+     * there is none yet.
+     */
+    public int signingKeyId() throws SQLException {
+        Key key = signingKey;
+        if (key != null && key.isFresh()) {
+            return key.kid;
+        }
+        return loadSigningKey();
+    }
+
+    /**
+     * Reads the newest key, or creates one. Synchronized, and checks again
+     * once it holds the lock, so threads that all find no key create only
+     * one.
+     */
+    private synchronized int loadSigningKey() throws SQLException {
+        Key key = signingKey;
+        if (key != null && key.isFresh()) {
+            return key.kid;
+        }
+        key = null;
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (Statement st = con.createStatement()) {
+                ResultSet rs = st.executeQuery("select kid, secret from badge_keys where retired_at is null order by kid desc limit 1");
+                if (rs.next()) {
+                    key = new Key(rs.getInt("kid"), new SecretKeySpec(rs.getBytes("secret"), ALGORITHM));
+                }
+            }
+        }
+        if (key == null) {
+            return rotate();
+        }
+        cache(key);
+        signingKey = key;
+        return key.kid;
+    }
+
+    public byte[] sign(int kid, String message) throws SQLException {
+        Mac mac = mac(kid);
+        if (mac == null) {
+            throw new SQLException("Badge key " + kid + " is unknown or retired");
+        }
+        return mac.doFinal(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Whether {@code signature} is a prefix of the message's HMAC under a
+     * key that is still valid. Compares in constant time.
+     */
+    public boolean verify(int kid, String message, byte[] signature) throws SQLException {
+        Mac mac = mac(kid);
+        if (mac == null) {
+            return false;
+        }
+        byte[] expected = mac.doFinal(message.getBytes(StandardCharsets.UTF_8));
+        if (signature.length == 0 || signature.length > expected.length) {
+            return false;
+        }
+        byte[] prefix = new byte[signature.length];
+        System.arraycopy(expected, 0, prefix, 0, prefix.length);
+        return MessageDigest.isEqual(prefix, signature);
+    }
+
+    /**
+     * Adds a new signing key. Badges signed with older keys stay valid
+     * until those keys are retired.
+     */
+    public int rotate() throws SQLException {
+        byte[] secret = new byte[SECRET_BYTES];
+        random.nextBytes(secret);
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement("insert into badge_keys (secret, created_at) values (?, now())",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                ps.setBytes(1, secret);
+                ps.executeUpdate();
+                ResultSet rs = ps.getGeneratedKeys();
+                rs.next();
+                Key key = new Key(rs.getInt(1), new SecretKeySpec(secret, ALGORITHM));
+                cache(key);
+                signingKey = key;
+                return key.kid;
+            }
+        }
+    }
+
+    /**
+     * Stops a key from verifying. Other kiosks notice once their cached copy
+     * expires.
+     */
+    public void retire(int kid) throws SQLException {
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement("update badge_keys set retired_at = now() where kid = ? and retired_at is null")) {
+                ps.setInt(1, kid);
+                ps.executeUpdate();
+            }
+        }
+        cache(new Key(kid, null));
+        Key key = signingKey;
+        if (key != null && key.kid == kid) {
+            signingKey = null;
+        }
+    }
+
+    private Mac mac(int kid) throws SQLException {
+        Key key = key(kid);
+        if (key.spec == null) {
+            return null;
+        }
+        Map<Integer, Mac> threadMacs = macs.get();
+        Mac mac = threadMacs.get(kid);
+        if (mac == null) {
+            if (threadMacs.size() >= MAX_CACHED_KEYS) {
+                threadMacs.clear();
+            }
+            try {
+                mac = Mac.getInstance(ALGORITHM);
+                mac.init(key.spec);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+            threadMacs.put(kid, mac);
+        }
+        return mac;
+    }
+
+    private Key key(int kid) throws SQLException {
+        synchronized (keys) {
+            Key key = keys.get(kid);
+            if (key != null && key.isFresh()) {
+                hits.incrementAndGet();
+                return key;
+            }
+        }
+        loads.incrementAndGet();
+        Key key;
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement("select secret from badge_keys where kid = ? and retired_at is null")) {
+                ps.setInt(1, kid);
+                ResultSet rs = ps.executeQuery();
+                key = new Key(kid, rs.next() ? new SecretKeySpec(rs.getBytes("secret"), ALGORITHM) : null);
+            }
+        } catch (SQLException ex) {
+            key = stale(kid);
+            if (key == null) {
+                throw ex;
+            }
+            staleUses.incrementAndGet();
+            return key;
+        }
+        cache(key);
+        return key;
+    }
+
+    /**
+     * The cached key however old it is, else the one in the offline
+     * snapshot, or null if neither has it.
+     */
+    private Key stale(int kid) {
+        synchronized (keys) {
+            Key key = keys.get(kid);
+            if (key != null) {
+                return key;
+            }
+        }
+        OfflineSnapshot.getInstance().restore();
+        synchronized (keys) {
+            return keys.get(kid);
+        }
+    }
+
+    /**
+     * Caches a key from the offline snapshot unless one is cached already.
+     * It counts as expired, so it is only used while the database cannot
+     * be reached.
+     */
+    void restore(int kid, byte[] secret) {
+        synchronized (keys) {
+            if (!keys.containsKey(kid)) {
+                keys.put(kid, new Key(kid, new SecretKeySpec(secret, ALGORITHM), 0));
+            }
+        }
+    }
+
+    /**
+     * The secrets of every key that is not retired, by key id.
+     */
+    static Map<Integer, byte[]> readSecrets(Connection con) throws SQLException {
+        Map<Integer, byte[]> secrets = new LinkedHashMap<>();
+        try (Statement st = con.createStatement()) {
+            ResultSet rs = st.executeQuery("select kid, secret from badge_keys where retired_at is null");
+            while (rs.next()) {
+                secrets.put(rs.getInt("kid"), rs.getBytes("secret"));
+            }
+        }
+        return secrets;
+    }
+
+    private void cache(Key key) {
+        synchronized (keys) {
+            keys.put(key.kid, key);
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (keys) {
+            return String.format("BadgeKeys[cached=%d, hits=%d, loads=%d, staleUses=%d]", keys.size(), hits.get(), loads.get(),
+                    staleUses.get());
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length == 2 && "retire".equals(args[0])) {
+                getInstance().retire(Integer.parseInt(args[1]));
+                JOptionPane.showMessageDialog(null, "Badge key " + args[1] + " retired");
+            } else {
+                JOptionPane.showMessageDialog(null, "New badge signing key " + getInstance().rotate());
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(null, ex);
+        }
+    }
+}
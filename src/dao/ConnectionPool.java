@@ -0,0 +1,443 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool. Connections handed out by {@link #borrow()}
+ * go back to the pool when the caller closes them, so every caller must use
+ * try-with-resources (or close in a finally block). Statements created
+ * through a connection are closed when it goes back, as they would be if
+ * it were really closed; the physical connections live for hours, and the
+ * driver keeps every statement left open on them.
+ *
+ * @author ASUS
+ */
+public class ConnectionPool {
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_INTERVAL_MILLIS = 30_000;
+    private static final long SLOT_POLL_MILLIS = 50;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> active = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    // Physical connections open or being opened; a slot is reserved here before connecting.
+    private final AtomicInteger physicalCount = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+            long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size min=" + minSize + " max=" + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        fillToMinimum();
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ConnectionPool Housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_INTERVAL_MILLIS,
+                HOUSEKEEPING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a validated connection, waiting up to the borrow timeout when
+     * all {@code maxSize} connections are in use.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a connection ("
+                        + getActiveCount() + " active, max " + maxSize + ")");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", ex);
+        }
+
+        PooledConnection pooled;
+        try {
+            pooled = takeOrOpen(start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis));
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+
+        long waited = System.nanoTime() - start;
+        borrowCount.incrementAndGet();
+        borrowWaitNanos.addAndGet(waited);
+        maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+
+        pooled.borrowedAt = System.currentTimeMillis();
+        pooled.borrower = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+        pooled.leakReported = false;
+        active.add(pooled);
+        return pooled.newHandle();
+    }
+
+    /**
+     * An idle connection, or a new one if a slot is free. When all slots
+     * are taken, one is idle or about to be, as the caller holds a permit.
+     */
+    private PooledConnection takeOrOpen(long deadline) throws SQLException {
+        while (true) {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled != null) {
+                return pooled;
+            }
+            int count = physicalCount.get();
+            if (count < maxSize) {
+                if (physicalCount.compareAndSet(count, count + 1)) {
+                    return new PooledConnection(openReserved());
+                }
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a connection ("
+                        + count + " open, max " + maxSize + ")");
+            }
+            try {
+                pooled = idle.pollFirst(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(SLOT_POLL_MILLIS)), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection", ex);
+            }
+            if (pooled != null) {
+                if (isUsable(pooled.physical)) {
+                    return pooled;
+                }
+                discard(pooled);
+            }
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isUsable(pooled.physical)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private boolean isUsable(Connection con) {
+        try {
+            return !con.isClosed() && con.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a connection for a slot already reserved in physicalCount,
+     * giving the slot back if that fails.
+     */
+    private Connection openReserved() throws SQLException {
+        try {
+            Connection con = DriverManager.getConnection(url, username, password);
+            createdCount.incrementAndGet();
+            return con;
+        } catch (SQLException | RuntimeException ex) {
+            physicalCount.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        active.remove(pooled);
+        pooled.borrower = null;
+        boolean reusable = !closed;
+        try {
+            if (reusable && !pooled.physical.isClosed()) {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+            } else {
+                reusable = false;
+            }
+        } catch (SQLException ex) {
+            reusable = false;
+        }
+        if (reusable) {
+            pooled.lastUsedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } else {
+            discard(pooled);
+        }
+        permits.release();
+    }
+
+    private void discard(PooledConnection pooled) {
+        physicalCount.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ex) {
+            // already broken, nothing left to release
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed) {
+            int count = physicalCount.get();
+            if (count >= minSize) {
+                return;
+            }
+            // Reserve the slot first, so a borrow opening a connection meanwhile is counted.
+            if (!physicalCount.compareAndSet(count, count + 1)) {
+                continue;
+            }
+            try {
+                PooledConnection pooled = new PooledConnection(openReserved());
+                pooled.lastUsedAt = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // Oldest idle connections sit at the tail, evict them first.
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && physicalCount.get() > minSize) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastUsedAt > idleTimeoutMillis && idle.remove(pooled)) {
+                    discard(pooled);
+                    evictedCount.incrementAndGet();
+                }
+            }
+
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pooled : active) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis) {
+                        pooled.leakReported = true;
+                        leakCount.incrementAndGet();
+                        System.err.println("Possible connection leak: held for " + (now - pooled.borrowedAt) + " ms");
+                        Throwable borrower = pooled.borrower;
+                        if (borrower != null) {
+                            borrower.printStackTrace();
+                        }
+                    }
+                }
+            }
+
+            fillToMinimum();
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public double getAverageBorrowWaitMillis() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : borrowWaitNanos.get() / 1_000_000.0 / count;
+    }
+
+    public double getMaxBorrowWaitMillis() {
+        return maxBorrowWaitNanos.get() / 1_000_000.0;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[active=%d, idle=%d, max=%d, borrows=%d, avgWait=%.2fms, maxWait=%.2fms, created=%d, evicted=%d, leaks=%d]",
+                getActiveCount(), getIdleCount(), maxSize, getBorrowCount(), getAverageBorrowWaitMillis(),
+                getMaxBorrowWaitMillis(), getCreatedCount(), getEvictedCount(), getLeakCount());
+    }
+
+    /**
+     * A physical connection owned by the pool. Each borrow gets its own
+     * proxy handle so a stale handle closed twice cannot return the same
+     * connection to the pool again.
+     */
+    private class PooledConnection {
+
+        final Connection physical;
+        volatile long borrowedAt;
+        volatile long lastUsedAt;
+        volatile Throwable borrower;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+
+        private final PooledConnection pooled;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private final List<Statement> statements = new ArrayList<>();
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (released.compareAndSet(false, true)) {
+                        closeStatements();
+                        giveBack(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return released.get() || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    if (released.get()) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(pooled.physical, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        track((Statement) result);
+                    }
+                    return result;
+            }
+        }
+
+        private synchronized void track(Statement statement) {
+            // Forget the ones the caller closed, so a long borrow does not pile them up.
+            if (statements.size() >= 32) {
+                statements.removeIf(st -> {
+                    try {
+                        return st.isClosed();
+                    } catch (SQLException ex) {
+                        return true;
+                    }
+                });
+            }
+            statements.add(statement);
+        }
+
+        private synchronized void closeStatements() {
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException ex) {
+                    // the connection is checked before it is reused
+                }
+            }
+            statements.clear();
+        }
+    }
+}
@@ -7,6 +7,7 @@ package dao;
 import java.sql.Statement;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 
 /**
  *
@@ -19,30 +20,130 @@ public class ConnectionProvider {
     private static final String DB_USERNAME = "root";
     private static final String DB_PASSWORD = "Vko@27400";
 
+    // Pool sizing can be overridden with -Dvms.pool.minSize=... etc. on the command line.
+    private static final int POOL_MIN_SIZE = Integer.getInteger("vms.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("vms.pool.maxSize", 8);
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = Long.getLong("vms.pool.borrowTimeoutMillis", 5_000L);
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("vms.pool.idleTimeoutMillis", 300_000L);
+    private static final long POOL_LEAK_THRESHOLD_MILLIS = Long.getLong("vms.pool.leakThresholdMillis", 60_000L);
+
+    // While the server is unreachable getCon() returns null at once, trying again after this long.
+    private static final long RETRY_MILLIS = Long.getLong("vms.db.retryMillis", 5_000L);
+    private static final int CONNECT_TIMEOUT_MILLIS = Integer.getInteger("vms.db.connectTimeoutMillis", 5_000);
+
+    private static ConnectionPool pool;
+    private static volatile SQLException migrationFailure = null;
+    private static volatile boolean migrationReported = false;
+    private static volatile boolean online = true;
+    private static volatile long retryAt = 0;
+
+    /**
+     * Borrows a connection from the shared pool. The caller must close it,
+     * which hands it back to the pool instead of closing the socket.
+     *
+     * Returns null if there is none. Once the server turns out to be
+     * unreachable, callers get null straight away rather than each waiting
+     * on a connect timeout, until vms.db.retryMillis has passed and one of
+     * them tries again.
+     */
     public static Connection getCon() {
+        if (!online && System.currentTimeMillis() < retryAt) {
+            return null;
+        }
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            Connection con = DriverManager.getConnection(DB_URL + "?useSSL=false",DB_USERNAME,DB_PASSWORD);
-            if(!databaseExists(con, DB_NAME)){
-                createDatabase(con, DB_NAME);
+            Connection con = getPool().borrow();
+            if (!online) {
+                online = true;
+                System.out.println("Database is reachable again");
             }
-            con=DriverManager.getConnection(DB_URL+DB_NAME+"?useSSL=false",DB_USERNAME,DB_PASSWORD);
             return con;
-            
-        }catch (Exception ex) {
-            ex.printStackTrace();
+        } catch (Exception ex) {
+            if (isUnreachable(ex)) {
+                retryAt = System.currentTimeMillis() + RETRY_MILLIS;
+                if (online) {
+                    online = false;
+                    ex.printStackTrace();
+                }
+            } else if (ex != migrationFailure || !migrationReported) {
+                migrationReported = ex == migrationFailure;
+                ex.printStackTrace();
+            }
             return null;
         }
     }
 
+    /**
+     * Whether the last attempt reached the server. False from the first
+     * failure to connect until a connection is borrowed again.
+     */
+    public static boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Whether a failure means the server cannot be reached (SQLState class
+     * 08), as opposed to e.g. the pool being busy.
+     */
+    private static boolean isUnreachable(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the shared pool, creating the database, the pool and running
+     * the schema migrations on first use only. If the migrations fail,
+     * there is no pool and this throws that failure until the app restarts.
+     */
+    public static synchronized ConnectionPool getPool() throws Exception {
+        if (migrationFailure != null) {
+            throw migrationFailure;
+        }
+        if (pool == null) {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            try (Connection con = DriverManager.getConnection(DB_URL + "?useSSL=false&connectTimeout=" + CONNECT_TIMEOUT_MILLIS,
+                    DB_USERNAME, DB_PASSWORD)) {
+                if (!databaseExists(con, DB_NAME)) {
+                    createDatabase(con, DB_NAME);
+                }
+            }
+            pool = new ConnectionPool(DB_URL + DB_NAME + "?useSSL=false&useAffectedRows=true&connectTimeout="
+                    + CONNECT_TIMEOUT_MILLIS, DB_USERNAME, DB_PASSWORD,
+                    POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_BORROW_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS,
+                    POOL_LEAK_THRESHOLD_MILLIS);
+            try (Connection con = pool.borrow()) {
+                SchemaMigrator.migrate(con);
+            } catch (SQLException ex) {
+                // Code below expects the current schema, so serve no connections until it is fixed and the app restarted.
+                pool.close();
+                pool = null;
+                if (isUnreachable(ex)) {
+                    throw ex;
+                }
+                migrationFailure = new SQLException("Schema migration failed; fix the database and restart", ex);
+                throw migrationFailure;
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "ConnectionPool Shutdown"));
+        }
+        return pool;
+    }
+
     private static boolean databaseExists(Connection con, String dbName) throws Exception {
-        Statement stmt = con.createStatement();
-        return stmt.executeQuery("SHOW DATABASES LIKE '" + dbName + "'").next();
+        try (Statement stmt = con.createStatement()) {
+            return stmt.executeQuery("SHOW DATABASES LIKE '" + dbName + "'").next();
+        }
     }
 
     private static void createDatabase(Connection con, String dbName) throws Exception {
-        Statement stmt = con.createStatement();
-        stmt.executeUpdate("CREATE DATABASE " + dbName);
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE DATABASE " + dbName);
+        }
         System.out.println("Database '" + dbName + "' created successfully.");
 
     }
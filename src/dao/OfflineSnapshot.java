@@ -0,0 +1,352 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What a kiosk needs to keep accepting scans while the database cannot be
+ * reached: the visitors in the {@link VisitorDirectory}, the badge keys
+ * that are not retired and today's attendance rows. While the database is
+ * up, the "OfflineSnapshot Writer" thread saves them every
+ * vms.offline.snapshotMillis (10 minutes) to vms.offline.snapshot
+ * (offline.snapshot in the attendance journal directory), writing a
+ * temporary file and renaming it over the old one.
+ *
+ * When a lookup fails for want of the database, the snapshot is read back
+ * unless the file has not changed since it last was: visitors the
+ * directory does not have are added, the keys are cached as expired so
+ * they are only used offline, and the attendance rows are what
+ * {@link AttendanceJournal} starts from for visitors it has not seen
+ * today. The file holds badge secrets, so only its owner may read it,
+ * through POSIX permissions or, on Windows, an ACL. Where neither can be
+ * set the secrets are left out, and badges cannot be verified offline.
+ *
+ * @author ASUS
+ */
+public class OfflineSnapshot {
+
+    private static final File FILE = new File(System.getProperty("vms.offline.snapshot",
+            new File(AttendanceJournal.DIR, "offline.snapshot").getPath()));
+    private static final long SAVE_MILLIS = Long.getLong("vms.offline.snapshotMillis", 600_000L);
+    private static final long CHECK_MILLIS = 5_000L;
+
+    private static final int MAGIC = 0x564d5353;
+    private static final int VERSION = 1;
+
+    private static final OfflineSnapshot INSTANCE = new OfflineSnapshot(FILE);
+
+    private final File file;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long loadedModified = 0;
+    private volatile boolean restored = false;
+    private volatile LocalDate date = null;
+    private volatile Map<Integer, LocalDateTime[]> attendance = Collections.emptyMap();
+    private Thread writer = null;
+
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong saveNanos = new AtomicLong();
+    private volatile long savedAt = 0;
+    private volatile long savedBytes = 0;
+    private volatile int visitors = 0;
+    private volatile int keys = 0;
+    private volatile int rows = 0;
+
+    public static OfflineSnapshot getInstance() {
+        return INSTANCE;
+    }
+
+    OfflineSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Starts the writer thread, which also restores the snapshot as soon as
+     * the database is found to be down.
+     */
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(this::saveLoop, "OfflineSnapshot Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void saveLoop() {
+        long due = 0;
+        while (true) {
+            try {
+                Thread.sleep(CHECK_MILLIS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (!ConnectionProvider.isOnline()) {
+                restore();
+                continue;
+            }
+            if (System.currentTimeMillis() < due) {
+                continue;
+            }
+            try {
+                // A directory that never preloaded holds too few visitors to replace the snapshot with.
+                if (!VisitorDirectory.getInstance().isLoaded()) {
+                    VisitorDirectory.getInstance().preload();
+                }
+                save();
+                due = System.currentTimeMillis() + SAVE_MILLIS;
+            } catch (SQLException | IOException ex) {
+                if (ConnectionProvider.isOnline()) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a new snapshot from the directory and the database.
+     */
+    public void save() throws SQLException, IOException {
+        long start = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        Map<Integer, byte[]> secrets;
+        Map<Integer, LocalDateTime[]> todayRows = new HashMap<>();
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            secrets = BadgeKeys.readSecrets(con);
+            try (PreparedStatement ps = con.prepareStatement("select userid, checkin, checkout from userattendance where date=?")) {
+                ps.setDate(1, Date.valueOf(today));
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    Timestamp checkIn = rs.getTimestamp("checkin");
+                    Timestamp checkOut = rs.getTimestamp("checkout");
+                    if (checkIn != null) {
+                        todayRows.put(rs.getInt("userid"), new LocalDateTime[]{checkIn.toLocalDateTime(),
+                            checkOut == null ? null : checkOut.toLocalDateTime()});
+                    }
+                }
+            }
+        }
+        List<Visitor> directory = VisitorDirectory.getInstance().visitors();
+
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            if (!ownerOnly(temp)) {
+                secrets = Collections.emptyMap();
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(today.toEpochDay());
+            out.writeInt(directory.size());
+            for (Visitor visitor : directory) {
+                out.writeInt(visitor.getId());
+                writeString(out, visitor.getName());
+                writeString(out, visitor.getGender());
+                writeString(out, visitor.getEmail());
+                writeString(out, visitor.getContact());
+                writeString(out, visitor.getHostEmployeeDetails());
+                writeString(out, visitor.getCompanyName());
+                writeString(out, visitor.getCountry());
+                writeString(out, visitor.getUniqueRegId());
+                writeString(out, visitor.getImageName());
+            }
+            out.writeInt(secrets.size());
+            for (Map.Entry<Integer, byte[]> secret : secrets.entrySet()) {
+                out.writeInt(secret.getKey());
+                out.writeInt(secret.getValue().length);
+                out.write(secret.getValue());
+            }
+            out.writeInt(todayRows.size());
+            for (Map.Entry<Integer, LocalDateTime[]> row : todayRows.entrySet()) {
+                out.writeInt(row.getKey());
+                out.writeLong(millis(row.getValue()[0]));
+                out.writeLong(row.getValue()[1] == null ? -1 : millis(row.getValue()[1]));
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        savedAt = System.currentTimeMillis();
+        savedBytes = file.length();
+        visitors = directory.size();
+        keys = secrets.size();
+        rows = todayRows.size();
+        saves.incrementAndGet();
+        saveNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the snapshot back if the file was written since it was last
+     * read, so a later outage starts from a snapshot saved after the last
+     * one, and returns whether one has been read.
+     */
+    public synchronized boolean restore() {
+        long modified = file.lastModified();
+        if (modified == 0 || modified == loadedModified) {
+            return restored;
+        }
+        // Also after a failure, so a broken file is not read again on every lookup.
+        loadedModified = modified;
+        try {
+            load();
+            restored = true;
+            System.out.println("Restored " + this);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return restored;
+    }
+
+    private void load() throws IOException {
+        List<Visitor> directory;
+        Map<Integer, LocalDateTime[]> loaded;
+        LocalDate day;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " offline snapshot: " + file);
+            }
+            savedAt = in.readLong();
+            day = LocalDate.ofEpochDay(in.readLong());
+            int count = in.readInt();
+            directory = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                directory.add(new Visitor(in.readInt(), readString(in), readString(in), readString(in), readString(in),
+                        readString(in), readString(in), readString(in), readString(in), readString(in)));
+            }
+            visitors = count;
+            keys = in.readInt();
+            for (int i = 0; i < keys; i++) {
+                int kid = in.readInt();
+                byte[] secret = new byte[in.readInt()];
+                in.readFully(secret);
+                BadgeKeys.getInstance().restore(kid, secret);
+            }
+            rows = in.readInt();
+            loaded = new HashMap<>(rows * 2);
+            for (int i = 0; i < rows; i++) {
+                int userId = in.readInt();
+                LocalDateTime checkIn = time(in.readLong());
+                long checkOut = in.readLong();
+                loaded.put(userId, new LocalDateTime[]{checkIn, checkOut < 0 ? null : time(checkOut)});
+            }
+        }
+        savedBytes = file.length();
+        VisitorDirectory.getInstance().restore(directory);
+        attendance = loaded;
+        date = day;
+    }
+
+    /**
+     * The visitor's check-in and check-out on a date as of the snapshot,
+     * or null if it has no row for them. Restores the snapshot if need be.
+     */
+    LocalDateTime[] attendance(int userId, LocalDate day) {
+        restore();
+        return day.equals(date) ? attendance.get(userId) : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private long millis(LocalDateTime time) {
+        return time.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private LocalDateTime time(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+    }
+
+    /**
+     * Lets only the file's owner read and write it; false if that cannot
+     * be done on this file system.
+     */
+    private static boolean ownerOnly(File file) {
+        Path path = file.toPath();
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+            return true;
+        } catch (UnsupportedOperationException | IOException ex) {
+            // Not POSIX, as on Windows.
+        }
+        AclFileAttributeView acl = Files.getFileAttributeView(path, AclFileAttributeView.class);
+        if (acl == null) {
+            return false;
+        }
+        try {
+            // Replaces the inherited entries that let other users read it.
+            acl.setAcl(Collections.singletonList(AclEntry.newBuilder()
+                    .setType(AclEntryType.ALLOW)
+                    .setPrincipal(acl.getOwner())
+                    .setPermissions(EnumSet.allOf(AclEntryPermission.class))
+                    .build()));
+            return true;
+        } catch (IOException | SecurityException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * How old the snapshot on disk is, in seconds; -1 if there is none.
+     */
+    public long getAgeSeconds() {
+        long at = savedAt;
+        return at == 0 ? -1 : (System.currentTimeMillis() - at) / 1000;
+    }
+
+    @Override
+    public String toString() {
+        long count = saves.get();
+        return String.format("OfflineSnapshot[visitors=%d, keys=%d, rows=%d, bytes=%d, ageSeconds=%d, saves=%d, "
+                + "avgSaveMillis=%d, restored=%b]", visitors, keys, rows, savedBytes, getAgeSeconds(), count,
+                count == 0 ? 0 : saveNanos.get() / count / 1_000_000, restored);
+    }
+}
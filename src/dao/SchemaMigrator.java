@@ -0,0 +1,264 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned schema migrations, applied in order once per process when the
+ * connection pool starts. Applied versions are recorded in schema_version
+ * together with how long each one took. A MySQL named lock keeps two
+ * kiosks starting at the same time from migrating concurrently.
+ *
+ * Migrations must tolerate databases created by older builds, which may
+ * already have some of the tables or indexes.
+ *
+ * @author ASUS
+ */
+public class SchemaMigrator {
+
+    private static final String LOCK_NAME = "visitorJframebd_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+    interface Migration {
+
+        void apply(Connection con) throws SQLException;
+    }
+
+    private static class Step {
+
+        final int version;
+        final String description;
+        final Migration migration;
+
+        Step(int version, String description, Migration migration) {
+            this.version = version;
+            this.description = description;
+            this.migration = migration;
+        }
+    }
+
+    private static final List<Step> STEPS = new ArrayList<>();
+
+    static {
+        STEPS.add(new Step(1, "create userdetails", con -> execute(con,
+                "CREATE TABLE IF NOT EXISTS userdetails (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+                + "gender VARCHAR(50) NOT NULL, email VARCHAR(50) NOT NULL, contact VARCHAR(20) NOT NULL, "
+                + "hostEmployeeDetails VARCHAR(255), companyName VARCHAR(255), country VARCHAR(100), "
+                + "uniqueregid VARCHAR(100) NOT NULL, imagename VARCHAR(250))")));
+        STEPS.add(new Step(2, "add registration columns missing from early userdetails tables", con -> {
+            if (!columnExists(con, "userdetails", "hostEmployeeDetails")) {
+                execute(con, "ALTER TABLE userdetails ADD COLUMN hostEmployeeDetails VARCHAR(255)");
+            }
+            if (!columnExists(con, "userdetails", "companyName")) {
+                execute(con, "ALTER TABLE userdetails ADD COLUMN companyName VARCHAR(255)");
+            }
+        }));
+        STEPS.add(new Step(3, "create userattendance", con -> execute(con,
+                "CREATE TABLE IF NOT EXISTS userattendance (id INT AUTO_INCREMENT PRIMARY KEY, userid INT NOT NULL, "
+                + "date DATE NOT NULL, checkin DATETIME, checkout DATETIME, workduration VARCHAR(100))")));
+        STEPS.add(new Step(4, "unique (userid, date) on userattendance", con -> {
+            if (!indexExists(con, "userattendance", "uk_userattendance_user_date")) {
+                mergeDuplicateAttendance(con);
+                execute(con, "ALTER TABLE userattendance ADD UNIQUE KEY uk_userattendance_user_date (userid, date)");
+            }
+        }));
+        STEPS.add(new Step(5, "unique email and uniqueregid lookup on userdetails", con -> {
+            if (!indexExists(con, "userdetails", "uk_userdetails_email")) {
+                renameDuplicateEmails(con);
+                execute(con, "ALTER TABLE userdetails ADD UNIQUE KEY uk_userdetails_email (email)");
+            }
+            if (!indexExists(con, "userdetails", "idx_userdetails_uniqueregid")) {
+                execute(con, "ALTER TABLE userdetails ADD INDEX idx_userdetails_uniqueregid (uniqueregid)");
+            }
+        }));
+        STEPS.add(new Step(6, "name prefix and name/email fulltext search on userdetails", con -> {
+            if (!indexExists(con, "userdetails", "idx_userdetails_name")) {
+                execute(con, "ALTER TABLE userdetails ADD INDEX idx_userdetails_name (name(50))");
+            }
+            if (!indexExists(con, "userdetails", "ft_userdetails_name_email")) {
+                execute(con, "ALTER TABLE userdetails ADD FULLTEXT INDEX ft_userdetails_name_email (name, email)");
+            }
+        }));
+        STEPS.add(new Step(7, "create badge_keys", con -> execute(con,
+                "CREATE TABLE IF NOT EXISTS badge_keys (kid INT AUTO_INCREMENT PRIMARY KEY, secret VARBINARY(64) NOT NULL, "
+                + "created_at DATETIME NOT NULL, retired_at DATETIME NULL)")));
+        STEPS.add(new Step(8, "create attendance_journal", con -> execute(con,
+                "CREATE TABLE IF NOT EXISTS attendance_journal (journal_id CHAR(36) PRIMARY KEY, "
+                + "last_seq BIGINT NOT NULL, updated_at DATETIME NOT NULL)")));
+    }
+
+    /**
+     * Applies every migration newer than the recorded schema version.
+     */
+    public static void migrate(Connection con) throws SQLException {
+        execute(con, "CREATE TABLE IF NOT EXISTS schema_version (version INT PRIMARY KEY, description VARCHAR(200) NOT NULL, "
+                + "applied_at DATETIME NOT NULL, duration_ms BIGINT NOT NULL)");
+
+        if (!acquireLock(con)) {
+            throw new SQLException("Timed out waiting for another instance to finish migrating the schema");
+        }
+        try {
+            int current = currentVersion(con);
+            for (Step step : STEPS) {
+                if (step.version <= current) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                step.migration.apply(con);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+
+                try (PreparedStatement ps = con.prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied_at, duration_ms) VALUES (?, ?, NOW(), ?)")) {
+                    ps.setInt(1, step.version);
+                    ps.setString(2, step.description);
+                    ps.setLong(3, millis);
+                    ps.executeUpdate();
+                }
+                System.out.println("Migration " + step.version + " (" + step.description + ") applied in " + millis + " ms");
+            }
+        } finally {
+            releaseLock(con);
+        }
+    }
+
+    /**
+     * Folds every visitor's rows for a day into the one with the lowest id,
+     * keeping the earliest check-in and the latest check-out, so the unique
+     * key can be added to tables written before it existed.
+     */
+    private static void mergeDuplicateAttendance(Connection con) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("UPDATE userattendance a JOIN (SELECT MIN(id) AS id, MIN(checkin) AS checkin, MAX(checkout) AS checkout "
+                    + "FROM userattendance GROUP BY userid, date HAVING COUNT(*) > 1) d ON a.id = d.id "
+                    + "SET a.checkin = d.checkin, a.checkout = d.checkout, a.workduration = IF(d.checkin IS NULL OR d.checkout IS NULL, "
+                    + "a.workduration, CONCAT(TIMESTAMPDIFF(HOUR, d.checkin, d.checkout), ' Hours and ', "
+                    + "MOD(TIMESTAMPDIFF(MINUTE, d.checkin, d.checkout), 60), ' Minutes'))");
+            int removed = st.executeUpdate("DELETE a FROM userattendance a JOIN userattendance b "
+                    + "ON a.userid = b.userid AND a.date = b.date AND a.id > b.id");
+            con.commit();
+            if (removed > 0) {
+                System.out.println("Merged " + removed + " duplicate userattendance rows");
+            }
+        } catch (SQLException ex) {
+            con.rollback();
+            throw ex;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Keeps each email on the visitor who registered it first and gives
+     * every later registration with the same email a "#duplicate-<id>"
+     * suffix, so the unique key can be added to tables written before
+     * registration checked for duplicates. Renamed visitors keep their
+     * badges and attendance, and the rename is printed so the email can be
+     * corrected by hand.
+     */
+    private static void renameDuplicateEmails(Connection con) throws SQLException {
+        int size = columnSize(con, "userdetails", "email");
+        List<Integer> ids = new ArrayList<>();
+        List<String> emails = new ArrayList<>();
+        try (Statement st = con.createStatement()) {
+            ResultSet rs = st.executeQuery("SELECT a.id, a.email FROM userdetails a WHERE EXISTS "
+                    + "(SELECT 1 FROM userdetails b WHERE b.email = a.email AND b.id < a.id) ORDER BY a.id");
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+                emails.add(rs.getString(2));
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (PreparedStatement ps = con.prepareStatement("UPDATE userdetails SET email = ? WHERE id = ?")) {
+            for (int i = 0; i < ids.size(); i++) {
+                String suffix = "#duplicate-" + ids.get(i);
+                String email = emails.get(i);
+                ps.setString(1, email.substring(0, Math.min(email.length(), Math.max(0, size - suffix.length()))) + suffix);
+                ps.setInt(2, ids.get(i));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            con.commit();
+        } catch (SQLException ex) {
+            con.rollback();
+            throw ex;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            System.out.println("Renamed duplicate email " + emails.get(i) + " of visitor " + ids.get(i));
+        }
+    }
+
+    private static int currentVersion(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version");
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static boolean acquireLock(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() && rs.getInt(1) == 1;
+        }
+    }
+
+    private static void releaseLock(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery();
+        }
+    }
+
+    private static void execute(Connection con, String sql) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate(sql);
+        }
+    }
+
+    private static boolean columnExists(Connection con, String table, String column) throws SQLException {
+        DatabaseMetaData dbm = con.getMetaData();
+        try (ResultSet rs = dbm.getColumns(con.getCatalog(), null, table, column)) {
+            return rs.next();
+        }
+    }
+
+    private static int columnSize(Connection con, String table, String column) throws SQLException {
+        DatabaseMetaData dbm = con.getMetaData();
+        try (ResultSet rs = dbm.getColumns(con.getCatalog(), null, table, column)) {
+            return rs.next() ? rs.getInt("COLUMN_SIZE") : 50;
+        }
+    }
+
+    private static boolean indexExists(Connection con, String table, String index) throws SQLException {
+        DatabaseMetaData dbm = con.getMetaData();
+        try (ResultSet rs = dbm.getIndexInfo(con.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
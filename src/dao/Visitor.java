@@ -0,0 +1,87 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * One row of the userdetails table.
+ *
+ * @author ASUS
+ */
+public class Visitor {
+
+    private final int id;
+    private final String name;
+    private final String gender;
+    private final String email;
+    private final String contact;
+    private final String hostEmployeeDetails;
+    private final String companyName;
+    private final String country;
+    private final String uniqueRegId;
+    private final String imageName;
+
+    public Visitor(int id, String name, String gender, String email, String contact, String hostEmployeeDetails,
+            String companyName, String country, String uniqueRegId, String imageName) {
+        this.id = id;
+        this.name = name;
+        this.gender = gender;
+        this.email = email;
+        this.contact = contact;
+        this.hostEmployeeDetails = hostEmployeeDetails;
+        this.companyName = companyName;
+        this.country = country;
+        this.uniqueRegId = uniqueRegId;
+        this.imageName = imageName;
+    }
+
+    public static Visitor fromResultSet(ResultSet rs) throws SQLException {
+        return new Visitor(rs.getInt("id"), rs.getString("name"), rs.getString("gender"), rs.getString("email"),
+                rs.getString("contact"), rs.getString("hostEmployeeDetails"), rs.getString("companyName"),
+                rs.getString("country"), rs.getString("uniqueregid"), rs.getString("imagename"));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getGender() {
+        return gender;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getContact() {
+        return contact;
+    }
+
+    public String getHostEmployeeDetails() {
+        return hostEmployeeDetails;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public String getUniqueRegId() {
+        return uniqueRegId;
+    }
+
+    public String getImageName() {
+        return imageName;
+    }
+}
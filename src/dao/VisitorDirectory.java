@@ -0,0 +1,305 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory directory of registered visitors, indexed by id, email and
+ * unique registration id. It is preloaded once, kept current by
+ * {@link #put(Visitor)} when a visitor registers, and bounded by LRU
+ * eviction. Lookups that miss fall through to the database and cache the
+ * row they find. While the database cannot be reached, the directory
+ * falls back on the visitors in the {@link OfflineSnapshot}.
+ *
+ * @author ASUS
+ */
+public class VisitorDirectory {
+
+    private static final int MAX_SIZE = Integer.getInteger("vms.directory.maxSize", 100_000);
+
+    private static final VisitorDirectory INSTANCE = new VisitorDirectory(MAX_SIZE);
+
+    private final int maxSize;
+    private final LinkedHashMap<Integer, Visitor> byId;
+    private final Map<String, Integer> idByEmail = new HashMap<>();
+    private final Map<String, Integer> idByRegId = new HashMap<>();
+    private volatile boolean loaded = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public static VisitorDirectory getInstance() {
+        return INSTANCE;
+    }
+
+    public VisitorDirectory(int maxSize) {
+        this.maxSize = maxSize;
+        this.byId = new LinkedHashMap<Integer, Visitor>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Visitor> eldest) {
+                if (size() > VisitorDirectory.this.maxSize) {
+                    unindex(eldest.getValue());
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Loads the most recently registered visitors, up to the size bound.
+     */
+    public void preload() throws SQLException {
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            // Insert oldest first so the newest registrations are the most recently used.
+            List<Visitor> rows = new ArrayList<>();
+            try (Statement st = con.createStatement()) {
+                st.setFetchSize(1000);
+                ResultSet rs = st.executeQuery("select * from userdetails order by id desc limit " + maxSize);
+                while (rs.next()) {
+                    rows.add(Visitor.fromResultSet(rs));
+                }
+            }
+            synchronized (this) {
+                for (int i = rows.size() - 1; i >= 0; i--) {
+                    store(rows.get(i));
+                }
+            }
+        }
+        loaded = true;
+    }
+
+    /**
+     * Starts {@link #preload()} on a background thread.
+     */
+    public void preloadAsync() {
+        if (loaded) {
+            return;
+        }
+        Thread t = new Thread(() -> {
+            try {
+                preload();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }, "VisitorDirectory Preload");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Adds or replaces a visitor, e.g. right after registration.
+     */
+    public synchronized void put(Visitor visitor) {
+        Visitor previous = byId.get(visitor.getId());
+        if (previous != null) {
+            unindex(previous);
+        }
+        store(visitor);
+    }
+
+    /**
+     * Adds visitors from the offline snapshot that are not here already,
+     * oldest first, without evicting any that are.
+     */
+    synchronized int restore(List<Visitor> visitors) {
+        int restored = 0;
+        for (Visitor visitor : visitors) {
+            if (byId.size() >= maxSize) {
+                break;
+            }
+            if (!byId.containsKey(visitor.getId())) {
+                store(visitor);
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Every visitor in the directory, least recently used first, for the
+     * offline snapshot.
+     */
+    synchronized List<Visitor> visitors() {
+        return new ArrayList<>(byId.values());
+    }
+
+    public synchronized void remove(int id) {
+        Visitor previous = byId.remove(id);
+        if (previous != null) {
+            unindex(previous);
+        }
+    }
+
+    public Visitor findById(int id) throws SQLException {
+        synchronized (this) {
+            Visitor visitor = byId.get(id);
+            if (visitor != null) {
+                hits.incrementAndGet();
+                return visitor;
+            }
+        }
+        misses.incrementAndGet();
+        return loadOne("id", String.valueOf(id));
+    }
+
+    public Visitor findByEmail(String email) throws SQLException {
+        if (email == null) {
+            return null;
+        }
+        synchronized (this) {
+            Integer id = idByEmail.get(email);
+            if (id != null) {
+                hits.incrementAndGet();
+                return byId.get(id);
+            }
+        }
+        misses.incrementAndGet();
+        return loadOne("email", email);
+    }
+
+    public Visitor findByRegId(String uniqueRegId) throws SQLException {
+        if (uniqueRegId == null) {
+            return null;
+        }
+        synchronized (this) {
+            Integer id = idByRegId.get(uniqueRegId);
+            if (id != null) {
+                hits.incrementAndGet();
+                return byId.get(id);
+            }
+        }
+        misses.incrementAndGet();
+        return loadOne("uniqueregid", uniqueRegId);
+    }
+
+    /**
+     * Visitors likely to scan today: everyone with an attendance row for
+     * today (they will come back to check out) and the most recent
+     * registrations, up to {@code limit} rows.
+     */
+    public List<Visitor> findExpectedToday(int limit) throws SQLException {
+        List<Visitor> visitors = new ArrayList<>();
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement("select * from userdetails where id in "
+                    + "(select userid from userattendance where date=curdate()) "
+                    + "union select * from (select * from userdetails order by id desc limit ?) recent limit ?")) {
+                ps.setInt(1, limit);
+                ps.setInt(2, limit);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    Visitor visitor = Visitor.fromResultSet(rs);
+                    put(visitor);
+                    visitors.add(visitor);
+                }
+            }
+        }
+        return visitors;
+    }
+
+    /**
+     * Reads a visitor from the database, or when that fails, looks again
+     * after restoring the offline snapshot.
+     */
+    private Visitor loadOne(String column, String value) throws SQLException {
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement("select * from userdetails where " + column + "=?")) {
+                ps.setString(1, value);
+                ResultSet rs = ps.executeQuery();
+                if (!rs.next()) {
+                    return null;
+                }
+                Visitor visitor = Visitor.fromResultSet(rs);
+                put(visitor);
+                return visitor;
+            }
+        } catch (SQLException ex) {
+            Visitor visitor = OfflineSnapshot.getInstance().restore() ? cached(column, value) : null;
+            if (visitor == null) {
+                throw ex;
+            }
+            return visitor;
+        }
+    }
+
+    private synchronized Visitor cached(String column, String value) {
+        Integer id;
+        switch (column) {
+            case "id":
+                id = Integer.valueOf(value);
+                break;
+            case "email":
+                id = idByEmail.get(value);
+                break;
+            default:
+                id = idByRegId.get(value);
+                break;
+        }
+        return id == null ? null : byId.get(id);
+    }
+
+    private void store(Visitor visitor) {
+        byId.put(visitor.getId(), visitor);
+        if (visitor.getEmail() != null) {
+            idByEmail.put(visitor.getEmail(), visitor.getId());
+        }
+        if (visitor.getUniqueRegId() != null) {
+            idByRegId.put(visitor.getUniqueRegId(), visitor.getId());
+        }
+    }
+
+    private void unindex(Visitor visitor) {
+        idByEmail.remove(visitor.getEmail(), visitor.getId());
+        idByRegId.remove(visitor.getUniqueRegId(), visitor.getId());
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VisitorDirectory[size=%d, max=%d, hits=%d, misses=%d, evictions=%d]",
+                size(), maxSize, getHits(), getMisses(), getEvictions());
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One visitor search in id order, read as blocks of rows by position so a
+ * table can fetch only what is on screen. A search that has been superseded
+ * can be cancelled, which also cancels the statement running on the server.
+ *
+ * Once {@link VisitorSearchIndex} is built, text searches take the matching
+ * ids from it and only fetch rows by primary key; until then they fall back
+ * to LIKE on the same four columns it indexes. The first text search
+ * starts the build. Blocks are read with an "id greater than"
+ * keyset when the id just before the block is known, so scrolling through
+ * the table costs the same at any depth; a jump to an unread position falls
+ * back to OFFSET.
+ *
+ * @author ASUS
+ */
+public class VisitorSearch {
+
+    /** The columns {@link VisitorSearchIndex} indexes, one parameter each. */
+    private static final String MATCHES = "(name like ? or email like ? or contact like ? or companyName like ?)";
+
+    private final String searchText;
+    private final String pattern;
+    private volatile int[] matchIds = null;
+    /** Last id before a row position, recorded as blocks are read. */
+    private final Map<Integer, Integer> idBefore = new ConcurrentHashMap<>();
+    private volatile boolean cancelled = false;
+    private volatile PreparedStatement running = null;
+
+    /**
+     * @param searchText text to match anywhere in name, email, contact or
+     * company name, or null for all visitors
+     */
+    public VisitorSearch(String searchText) {
+        this.searchText = searchText == null || searchText.isEmpty() ? null : searchText;
+        this.pattern = this.searchText == null ? null : "%" + escapeLike(this.searchText) + "%";
+        idBefore.put(0, 0);
+    }
+
+    /**
+     * Number of matching visitors. Call once, off the EDT, before reading
+     * blocks.
+     */
+    public int count() throws SQLException {
+        VisitorSearchIndex index = VisitorSearchIndex.getInstance();
+        if (index.isReady()) {
+            if (searchText == null) {
+                return index.size();
+            }
+            matchIds = index.search(searchText, 0, Integer.MAX_VALUE);
+            return matchIds.length;
+        }
+        if (searchText != null) {
+            index.buildAsync();
+        }
+        String sql = pattern == null
+                ? "select count(*) from userdetails"
+                : "select count(*) from userdetails where " + MATCHES;
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                if (pattern != null) {
+                    bindPattern(ps, 1);
+                }
+                ResultSet rs = ps.executeQuery();
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Sets the pattern for each column in {@link #MATCHES} from parameter
+     * {@code i} on and returns the index of the next parameter.
+     */
+    private int bindPattern(PreparedStatement ps, int i) throws SQLException {
+        for (int end = i + 4; i < end; i++) {
+            ps.setString(i, pattern);
+        }
+        return i;
+    }
+
+    /**
+     * Reads up to {@code limit} visitors starting at row {@code offset}, or
+     * an empty list if the search was cancelled.
+     */
+    public List<Visitor> fetch(int offset, int limit) throws SQLException {
+        if (cancelled) {
+            return new ArrayList<>();
+        }
+        int[] ids = matchIds;
+        if (ids != null) {
+            int to = Math.min(ids.length, offset + limit);
+            return offset >= to ? new ArrayList<>() : fetchByIds(Arrays.copyOfRange(ids, offset, to));
+        }
+
+        Integer afterId = idBefore.get(offset);
+        StringBuilder sql = new StringBuilder("select * from userdetails where ");
+        sql.append(afterId != null ? "id > ?" : "1=1");
+        if (pattern != null) {
+            sql.append(" and ").append(MATCHES);
+        }
+        sql.append(afterId != null ? " order by id limit ?" : " order by id limit ? offset ?");
+
+        List<Visitor> rows = new ArrayList<>();
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                int i = 1;
+                if (afterId != null) {
+                    ps.setInt(i++, afterId);
+                }
+                if (pattern != null) {
+                    i = bindPattern(ps, i);
+                }
+                ps.setInt(i++, limit);
+                if (afterId == null) {
+                    ps.setInt(i, offset);
+                }
+                running = ps;
+                try {
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next() && !cancelled) {
+                        rows.add(Visitor.fromResultSet(rs));
+                    }
+                } finally {
+                    running = null;
+                }
+            }
+        }
+        if (!rows.isEmpty()) {
+            idBefore.put(offset + rows.size(), rows.get(rows.size() - 1).getId());
+        }
+        return rows;
+    }
+
+    /**
+     * Row position of a visitor in this search, or -1 if it does not match.
+     */
+    public int indexOf(int id) throws SQLException {
+        int[] ids = matchIds;
+        if (ids != null) {
+            int pos = Arrays.binarySearch(ids, id);
+            return pos >= 0 ? pos : -1;
+        }
+        VisitorSearchIndex index = VisitorSearchIndex.getInstance();
+        if (searchText == null && index.isReady()) {
+            return index.rank(id);
+        }
+        String sql = pattern == null
+                ? "select count(*) from userdetails where id < ?"
+                : "select count(*) from userdetails where id < ? and " + MATCHES;
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                ps.setInt(1, id);
+                if (pattern != null) {
+                    bindPattern(ps, 2);
+                }
+                ResultSet rs = ps.executeQuery();
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private List<Visitor> fetchByIds(int[] ids) throws SQLException {
+        List<Visitor> rows = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select * from userdetails where id in (?");
+        for (int i = 1; i < ids.length; i++) {
+            sql.append(",?");
+        }
+        sql.append(") order by id");
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                for (int i = 0; i < ids.length; i++) {
+                    ps.setInt(i + 1, ids[i]);
+                }
+                running = ps;
+                try {
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next() && !cancelled) {
+                        rows.add(Visitor.fromResultSet(rs));
+                    }
+                } finally {
+                    running = null;
+                }
+            }
+        }
+        return rows;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        PreparedStatement ps = running;
+        if (ps != null) {
+            try {
+                ps.cancel();
+            } catch (SQLException ex) {
+                // statement already finished
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
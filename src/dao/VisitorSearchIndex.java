@@ -0,0 +1,289 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index over visitor name, email, contact and company for
+ * case-insensitive substring search. A leading-wildcard LIKE cannot use a
+ * B-tree index, so this replaces the full table scan behind the search box.
+ *
+ * Documents are kept in id order, which lets {@link #search} page with the
+ * same "id greater than" keyset as {@link VisitorSearch}. Queries of three
+ * or more characters intersect the posting lists of their trigrams and
+ * then confirm each candidate; shorter queries scan the documents until the
+ * page is full.
+ *
+ * The index holds the text of every visitor, so it is only built once
+ * someone searches, not when a form opens.
+ *
+ * @author ASUS
+ */
+public class VisitorSearchIndex {
+
+    private static final VisitorSearchIndex INSTANCE = new VisitorSearchIndex();
+
+    /** Separates fields so a match cannot span two of them. */
+    private static final char FIELD_SEPARATOR = '\u0001';
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] ids = new int[1024];
+    private String[] texts = new String[1024];
+    private int size = 0;
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private volatile boolean ready = false;
+    private volatile boolean building = false;
+    /** Another build was asked for while one was running. */
+    private boolean rebuild = false;
+
+    public static VisitorSearchIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the index from userdetails on a background thread unless it
+     * is ready. Asked while a build is running, builds again after it, as
+     * that build may have started before whatever made the index stale.
+     */
+    public void buildAsync() {
+        synchronized (this) {
+            if (building) {
+                rebuild = true;
+                return;
+            }
+            if (ready) {
+                return;
+            }
+            building = true;
+        }
+        Thread t = new Thread(() -> {
+            boolean again = true;
+            while (again) {
+                try {
+                    build();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+                synchronized (this) {
+                    again = rebuild;
+                    rebuild = false;
+                    building = again;
+                }
+            }
+        }, "VisitorSearchIndex Build");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void build() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            // Forward-only with MIN_VALUE fetch size makes Connector/J stream rows instead of buffering them all.
+            try (Statement st = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                st.setFetchSize(Integer.MIN_VALUE);
+                ResultSet rs = st.executeQuery("select id, name, email, contact, companyName from userdetails order by id");
+                lock.writeLock().lock();
+                try {
+                    size = 0;
+                    postings.clear();
+                    while (rs.next()) {
+                        append(rs.getInt("id"), rs.getString("name"), rs.getString("email"), rs.getString("contact"),
+                                rs.getString("companyName"));
+                    }
+                    // Drop the growth slack a bulk load leaves in every postings array.
+                    for (Postings list : postings.values()) {
+                        list.trimToSize();
+                    }
+                    ready = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+        System.out.println("VisitorSearchIndex built: " + size + " visitors, " + postings.size() + " trigrams in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Adds a newly registered visitor. Ids grow with every registration, so
+     * appending keeps the documents in id order.
+     */
+    public void add(Visitor visitor) {
+        lock.writeLock().lock();
+        try {
+            if (size == 0 || visitor.getId() > ids[size - 1]) {
+                append(visitor.getId(), visitor.getName(), visitor.getEmail(), visitor.getContact(), visitor.getCompanyName());
+                return;
+            }
+            if (Arrays.binarySearch(ids, 0, size, visitor.getId()) >= 0) {
+                // Already read by a build that ran after the insert.
+                return;
+            }
+            // Out of order: rebuild rather than break ordering.
+            ready = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        buildAsync();
+    }
+
+    /**
+     * Returns up to {@code limit} ids greater than {@code afterId} whose name,
+     * email, contact or company contains {@code query}, in id order.
+     */
+    public int[] search(String query, int afterId, int limit) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            int from = firstDocAfter(afterId);
+            int[] result = new int[Math.min(limit, size - from)];
+            int found = 0;
+            if (needle.length() < 3) {
+                for (int doc = from; doc < size && found < result.length; doc++) {
+                    if (texts[doc].contains(needle)) {
+                        result[found++] = ids[doc];
+                    }
+                }
+                return Arrays.copyOf(result, found);
+            }
+
+            List<Postings> lists = new ArrayList<>();
+            for (int i = 0; i + 3 <= needle.length(); i++) {
+                Postings list = postings.get(trigram(needle, i));
+                if (list == null) {
+                    return new int[0];
+                }
+                lists.add(list);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+            Postings smallest = lists.get(0);
+            int[] cursors = new int[lists.size()];
+            for (int p = smallest.lowerBound(from); p < smallest.size && found < result.length; p++) {
+                int doc = smallest.docs[p];
+                if (inAll(lists, cursors, doc) && texts[doc].contains(needle)) {
+                    result[found++] = ids[doc];
+                }
+            }
+            return Arrays.copyOf(result, found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Position of a visitor among all indexed visitors in id order, or -1.
+     */
+    public int rank(int id) {
+        lock.readLock().lock();
+        try {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            return pos >= 0 ? pos : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean inAll(List<Postings> lists, int[] cursors, int doc) {
+        for (int l = 1; l < lists.size(); l++) {
+            Postings list = lists.get(l);
+            int c = cursors[l];
+            while (c < list.size && list.docs[c] < doc) {
+                c++;
+            }
+            cursors[l] = c;
+            if (c == list.size || list.docs[c] != doc) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int firstDocAfter(int afterId) {
+        int pos = Arrays.binarySearch(ids, 0, size, afterId);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    private void append(int id, String name, String email, String contact, String company) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            texts = Arrays.copyOf(texts, size * 2);
+        }
+        String text = (nullToEmpty(name) + FIELD_SEPARATOR + nullToEmpty(email) + FIELD_SEPARATOR
+                + nullToEmpty(contact) + FIELD_SEPARATOR + nullToEmpty(company)).toLowerCase(Locale.ROOT);
+        int doc = size++;
+        ids[doc] = id;
+        texts[doc] = text;
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            postings.computeIfAbsent(trigram(text, i), k -> new Postings()).add(doc);
+        }
+    }
+
+    private static long trigram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Ascending, duplicate-free list of document positions.
+     */
+    private static class Postings {
+
+        int[] docs = new int[2];
+        int size = 0;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        void trimToSize() {
+            if (docs.length > size) {
+                docs = Arrays.copyOf(docs, size);
+            }
+        }
+
+        int lowerBound(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            return pos >= 0 ? pos : -pos - 1;
+        }
+    }
+}
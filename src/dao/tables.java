@@ -4,47 +4,23 @@
  */
 package dao;
 
-import java.sql.Statement;
-import java.sql.ResultSet;
 import java.sql.Connection;
 import javax.swing.JOptionPane;
 
+/**
+ * Applies any pending schema migrations on demand. The same migrations run
+ * automatically when the connection pool starts; see {@link SchemaMigrator}.
+ */
 public class tables {
 
     public static void main(String[] args) {
-        Connection con = null;
-        Statement st = null;
-        try {
-            con = ConnectionProvider.getCon();
-            st = con.createStatement();
-
-            if (!tableExists(st, "userdetails")) {
-                st.executeUpdate("CREATE TABLE userdetails (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) not null,"
-                        + "gender VARCHAR(50) not null,email VARCHAR(50) not null, contact VARCHAR(20) not null, address VARCHAR(500), state VARCHAR(100), country VARCHAR(100),uniqueregid VARCHAR(100) not null,imagename VARCHAR(250)); ");
-            }
-            if (!tableExists(st, "userdetails")) {
-                st.executeUpdate("CREATE TABLE userattendance (userid INT NOT NULL, date DATE NOT NULL, checkin DATETIME, checkout DATETIME, workduration VARCHAR (100))");
-            }
+        try (Connection con = ConnectionProvider.getPool().borrow()) {
+            SchemaMigrator.migrate(con);
             JOptionPane.showMessageDialog(null, "Tables Checked/Created Successfully");
         } catch (Exception ex) {
+            ex.printStackTrace();
             JOptionPane.showMessageDialog(null, ex);
-        } finally {
-            try {
-                if (con != null) {
-                    con.close();
-                }
-                if (st != null) {
-                    st.close();
-                }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
         }
 
     }
-
-    private static boolean tableExists(Statement st, String tableName) throws Exception {
-        ResultSet resultSet = st.executeQuery("SHOW TABLES LIKE '" + tableName + "'");
-        return resultSet.next();
-    }
 }
@@ -5,6 +5,7 @@
 package forms;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import javax.swing.BorderFactory;
 import utility.BDUtility;
 
@@ -14,12 +15,15 @@ import utility.BDUtility;
  */
 public class Dashboard extends javax.swing.JFrame {
 
+    /** Size the wallpaper is drawn at, warmed by Login ahead of opening. */
+    static final Dimension WALLPAPER_SIZE = new Dimension(1376, 768);
+
     /**
      * Creates new form Dashboard
      */
     public Dashboard() {
         initComponents();
-        BDUtility.setImage(this, "images/abc1.png", 1376, 768);
+        BDUtility.setImage(this, "images/abc1.png", WALLPAPER_SIZE.width, WALLPAPER_SIZE.height);
         this.getRootPane().setBorder(BorderFactory.createMatteBorder(4,4,4,4,Color.BLACK));
     }
 
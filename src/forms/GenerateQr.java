@@ -4,23 +4,29 @@
  */
 package forms;
 
-import com.google.gson.Gson;
-import dao.ConnectionProvider;
+import dao.Visitor;
+import dao.VisitorDirectory;
+import dao.VisitorSearch;
+import dao.VisitorSearchIndex;
 import java.awt.Color;
-import java.io.ByteArrayOutputStream;
+import java.awt.Dimension;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import javax.swing.BorderFactory;
-import javax.swing.table.DefaultTableModel;
+import utility.AtomicFiles;
 import utility.BDUtility;
+import utility.QrBadges;
+import utility.QrBatchGenerator;
+import utility.QrRenderer;
 import java.sql.*;
-import java.util.HashMap;
-import java.util.Map;
 import javax.swing.ImageIcon;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.table.TableModel;
-import net.glxn.qrgen.core.image.ImageType;
-import net.glxn.qrgen.javase.QRCode;
 
 /**
  *
@@ -28,13 +34,71 @@ import net.glxn.qrgen.javase.QRCode;
  */
 public class GenerateQr extends javax.swing.JFrame {
 
+    /** Size the wallpaper is drawn at, warmed by Login ahead of opening. */
+    static final Dimension WALLPAPER_SIZE = new Dimension(1101, 501);
+
+    /** Typing pauses longer than this start a new type-to-select query. */
+    private static final long TYPE_TO_SELECT_RESET_MILLIS = 1000;
+
+    private final StringBuilder typedQuery = new StringBuilder();
+    private long lastTypedAt = 0;
+    private VisitorTableModel userModel = null;
+    private QrBatchGenerator batch = null;
+
     /**
      * Creates new form GenerateQr
      */
     public GenerateQr() {
         initComponents();
-        BDUtility.setImage(this, "images/abc1.png", 1101, 501);
+        BDUtility.setImage(this, "images/abc1.png", WALLPAPER_SIZE.width, WALLPAPER_SIZE.height);
         this.getRootPane().setBorder(BorderFactory.createMatteBorder(4, 4, 4, 4, Color.BLACK));
+        userTable.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyTyped(KeyEvent e) {
+                if (Character.isISOControl(e.getKeyChar()) || e.isControlDown() || e.isAltDown()) {
+                    return;
+                }
+                // Consumed so the table's own key bindings do not act on it.
+                e.consume();
+                typeToSelect(e.getKeyChar());
+            }
+        });
+    }
+
+    /**
+     * Selects the first visitor whose name, email, contact or company
+     * contains what has been typed so far, and shows their QR code.
+     */
+    private void typeToSelect(char c) {
+        long now = System.currentTimeMillis();
+        if (now - lastTypedAt > TYPE_TO_SELECT_RESET_MILLIS) {
+            typedQuery.setLength(0);
+        }
+        lastTypedAt = now;
+        typedQuery.append(c);
+
+        VisitorSearchIndex index = VisitorSearchIndex.getInstance();
+        if (!index.isReady()) {
+            index.buildAsync();
+            return;
+        }
+        int[] ids = index.search(typedQuery.toString(), 0, 1);
+        if (ids.length == 0 || userModel == null) {
+            return;
+        }
+        try {
+            int row = userModel.indexOf(ids[0]);
+            if (row >= 0) {
+                userTable.setRowSelectionInterval(row, row);
+                userTable.scrollRectToVisible(userTable.getCellRect(row, 0, true));
+                Visitor visitor = VisitorDirectory.getInstance().findById(ids[0]);
+                if (visitor != null) {
+                    showQr(visitor);
+                }
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
     }
 
     /**
@@ -54,6 +118,8 @@ public class GenerateQr extends javax.swing.JFrame {
         userTable = new javax.swing.JTable();
         btnSaveQr = new javax.swing.JButton();
         btnSaveQrAt = new javax.swing.JButton();
+        btnGenerateAll = new javax.swing.JButton();
+        lblBatchStatus = new javax.swing.JLabel();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
         setMaximumSize(new java.awt.Dimension(1101, 501));
@@ -132,6 +198,16 @@ public class GenerateQr extends javax.swing.JFrame {
             }
         });
 
+        btnGenerateAll.setFont(new java.awt.Font("Segoe UI", 1, 14)); // NOI18N
+        btnGenerateAll.setText("Generate All");
+        btnGenerateAll.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                btnGenerateAllActionPerformed(evt);
+            }
+        });
+
+        lblBatchStatus.setFont(new java.awt.Font("Segoe UI", 0, 14)); // NOI18N
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -143,7 +219,12 @@ public class GenerateQr extends javax.swing.JFrame {
                 .addComponent(btnExit))
             .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, layout.createSequentialGroup()
                 .addGap(22, 22, 22)
-                .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 731, Short.MAX_VALUE)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 731, Short.MAX_VALUE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(btnGenerateAll, javax.swing.GroupLayout.PREFERRED_SIZE, 155, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(lblBatchStatus, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)))
                 .addGap(2, 2, 2)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(jInternalFrame1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -168,7 +249,10 @@ public class GenerateQr extends javax.swing.JFrame {
                 .addGap(18, 18, 18)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(btnSaveQr)
-                    .addComponent(btnSaveQrAt))
+                    .addComponent(btnSaveQrAt)
+                    .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                        .addComponent(btnGenerateAll)
+                        .addComponent(lblBatchStatus)))
                 .addGap(0, 27, Short.MAX_VALUE))
         );
 
@@ -189,7 +273,7 @@ public class GenerateQr extends javax.swing.JFrame {
     private void btnSaveQrActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSaveQrActionPerformed
         // TODO add your handling code here:
         try {
-        if (out == null) {
+        if (qr == null) {
             JOptionPane.showMessageDialog(this, "No QR Generated.!");
             return;
         }
@@ -203,23 +287,17 @@ public class GenerateQr extends javax.swing.JFrame {
 
         // Fetch email dynamically from the selected row
         TableModel model = userTable.getModel();
-        String email = model.getValueAt(index, 3).toString(); // Assuming email is in column 3
+        Object value = model.getValueAt(index, 3); // Assuming email is in column 3
+        String email = value == null ? null : value.toString();
 
         if (email == null || email.trim().isEmpty()) {
             JOptionPane.showMessageDialog(this, "Invalid email. Cannot save QR Code.");
             return;
         }
 
-        String defaultDir = BDUtility.getPath("qrCodes");
-        File directory = new File(defaultDir);
-        if (!directory.exists()) {
-            directory.mkdirs();
-        }
-
         // Save QR code with unique email-based filename
-        File defaultFile = new File(directory, email + ".png");
         try {
-            java.nio.file.Files.write(defaultFile.toPath(), out.toByteArray());
+            AtomicFiles.write(QrBadges.badgeFile(email), QrRenderer.encodePng(qr));
             JOptionPane.showMessageDialog(null, "QR Code saved successfully for: " + email);
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(this, "Error saving QR Code.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -233,7 +311,7 @@ public class GenerateQr extends javax.swing.JFrame {
     private void btnSaveQrAtActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSaveQrAtActionPerformed
         // TODO add your handling code here:
         try {
-            if (out == null) {
+            if (qr == null) {
                 JOptionPane.showMessageDialog(this, "No QR Generated.!");
                 return;
             }
@@ -246,7 +324,7 @@ public class GenerateQr extends javax.swing.JFrame {
             if (userSelection == JFileChooser.APPROVE_OPTION) {
                 File fileToSave = fileChooser.getSelectedFile();
                 try {
-                    java.nio.file.Files.write(fileToSave.toPath(), out.toByteArray());
+                    java.nio.file.Files.write(fileToSave.toPath(), QrRenderer.encodePng(qr));
                     JOptionPane.showMessageDialog(this, "QR Code saved successfully!");
                 } catch (Exception ex) {
                     JOptionPane.showMessageDialog(this, "Error saving QR Code.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -258,64 +336,82 @@ public class GenerateQr extends javax.swing.JFrame {
 
     }//GEN-LAST:event_btnSaveQrAtActionPerformed
 
-    private void formComponentShown(java.awt.event.ComponentEvent evt) {//GEN-FIRST:event_formComponentShown
+    private void btnGenerateAllActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnGenerateAllActionPerformed
         // TODO add your handling code here:
-        DefaultTableModel model = (DefaultTableModel) userTable.getModel();
-
-        try {
-            Connection connection = ConnectionProvider.getCon();
-            Statement statement = connection.createStatement();
-            ResultSet resultSet = statement.executeQuery("select * from userdetails");
-            while (resultSet.next()) {
-                model.addRow(new Object[]{
-                    resultSet.getString("id"),
-                    resultSet.getString("name"),
-                    resultSet.getString("gender"),
-                    resultSet.getString("email"),
-                    resultSet.getString("contact"),
-                    resultSet.getString("hostEmployeeDetails"),
-                    resultSet.getString("companyName"),
-                    resultSet.getString("country"),
-                    resultSet.getString("uniqueregid")
-                });
-            }
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(null, "Something went wrong.");
+        if (batch != null) {
+            batch.cancel();
+            return;
         }
+        String filter = JOptionPane.showInputDialog(this,
+                "Generate QR codes for visitors matching (leave empty for all visitors):", "Generate All",
+                JOptionPane.QUESTION_MESSAGE);
+        if (filter == null) {
+            return;
+        }
+        QrBatchGenerator generator = new QrBatchGenerator(new VisitorSearch(filter.trim()),
+                (done, failed, total, codesPerSecond) -> SwingUtilities.invokeLater(() -> lblBatchStatus.setText(
+                String.format("%d/%d generated, %d failed (%.0f codes/s)", done, total, failed, codesPerSecond))));
+        batch = generator;
+        btnGenerateAll.setText("Cancel");
+        lblBatchStatus.setText("Starting...");
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                generator.run();
+                return null;
+            }
 
+            @Override
+            protected void done() {
+                batch = null;
+                btnGenerateAll.setText("Generate All");
+                try {
+                    get();
+                    String message = String.format("%s %d QR codes in %.1f s (%.0f codes/s), %d failed.",
+                            generator.isCancelled() ? "Cancelled after" : "Generated", generator.getDone(),
+                            generator.getElapsedMillis() / 1000.0, generator.getCodesPerSecond(), generator.getFailed());
+                    System.out.println("QrBatchGenerator: " + message);
+                    JOptionPane.showMessageDialog(null, message);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    JOptionPane.showMessageDialog(null, "Something went wrong.");
+                }
+            }
+        }.execute();
+    }//GEN-LAST:event_btnGenerateAllActionPerformed
 
+    private void formComponentShown(java.awt.event.ComponentEvent evt) {//GEN-FIRST:event_formComponentShown
+        // TODO add your handling code here:
+        if (userModel != null) {
+            userModel.dispose();
+        }
+        userModel = new VisitorTableModel(VisitorTableModel.columnNamesOf(userTable.getModel()), new VisitorSearch(null));
+        userTable.setModel(userModel);
+        userModel.load();
     }//GEN-LAST:event_formComponentShown
 
-    ByteArrayOutputStream out = null;
+    /** The code on screen; refilled in place by {@link #renderer}, PNG-encoded only when saved. */
+    BufferedImage qr = null;
     String email = null;
+    private final QrRenderer renderer = QrRenderer.fromConfig();
     private void userTableMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_userTableMouseClicked
         // TODO add your handling code here:
         int index = userTable.getSelectedRow();
-        TableModel model = userTable.getModel();
-
-        String id = model.getValueAt(index, 0).toString();
-        String name = model.getValueAt(index, 1).toString();
-        String email = model.getValueAt(index, 3).toString();
-        String registrationId = model.getValueAt(index, 8).toString();
-
-        Map<String, String> data = new HashMap<>();
-        data.put("id", id);
-        data.put("name", name);
-        data.put("email", email);
-        data.put("registrationId", registrationId);
-
-        Gson gson = new Gson();
-        String jsonData = gson.toJson(data);
+        Visitor visitor = index == -1 || userModel == null ? null : userModel.getVisitor(index);
+        if (visitor != null) {
+            showQr(visitor);
+        }
+    }//GEN-LAST:event_userTableMouseClicked
 
-        out = QRCode.from(jsonData).withSize(322, 286).to(ImageType.PNG).stream();
+    private void showQr(Visitor visitor) {
         try {
-            byte[] imageData = out.toByteArray();
-            ImageIcon icon = new ImageIcon(imageData);
-            lblImage.setIcon(icon);
+            qr = renderer.render(QrBadges.payload(visitor));
+            lblImage.setIcon(new ImageIcon(qr));
+            lblImage.repaint();
         } catch (Exception ex) {
             ex.printStackTrace();
         }
-    }//GEN-LAST:event_userTableMouseClicked
+    }
 
     /**
      * @param args the command line arguments
@@ -354,11 +450,13 @@ public class GenerateQr extends javax.swing.JFrame {
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton btnExit;
+    private javax.swing.JButton btnGenerateAll;
     private javax.swing.JButton btnSaveQr;
     private javax.swing.JButton btnSaveQrAt;
     private javax.swing.JInternalFrame jInternalFrame1;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JScrollPane jScrollPane1;
+    private javax.swing.JLabel lblBatchStatus;
     private javax.swing.JLabel lblImage;
     private javax.swing.JTable userTable;
     // End of variables declaration//GEN-END:variables
@@ -8,6 +8,7 @@ import java.awt.Color;
 import javax.swing.BorderFactory;
 import javax.swing.JOptionPane;
 import utility.BDUtility;
+import utility.WallpaperCache;
 
 /**
  *
@@ -24,6 +25,9 @@ public class Login extends javax.swing.JFrame {
         this.getRootPane().setBorder(BorderFactory.createMatteBorder(6, 6, 6, 6, Color.ORANGE));
         txtEmail.setBorder(BorderFactory.createMatteBorder(1, 1, 1, 1, Color.yellow));
         txtPassword.setBorder(BorderFactory.createMatteBorder(1, 1, 1, 1, Color.yellow));
+        // Dashboard first, then the forms it opens.
+        WallpaperCache.getInstance().warmAsync("images/abc1.png", Dashboard.WALLPAPER_SIZE, MarkVisit.WALLPAPER_SIZE,
+                UserRegistration.WALLPAPER_SIZE, ViewUser.WALLPAPER_SIZE, GenerateQr.WALLPAPER_SIZE, viewQrs.WALLPAPER_SIZE);
     }
 
     /**
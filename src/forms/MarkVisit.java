@@ -6,81 +6,114 @@ package forms;
 
 import com.github.sarxos.webcam.Webcam;
 import com.github.sarxos.webcam.WebcamPanel;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.LuminanceSource;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.NotFoundException;
-import com.google.zxing.Result;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
+import dao.AttendanceDao;
+import dao.AttendanceJournal;
+import dao.AttendanceResult;
+import dao.BadgeKeys;
 import dao.ConnectionProvider;
+import dao.OfflineSnapshot;
+import dao.Visitor;
+import dao.VisitorDirectory;
 import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.HeadlessException;
 import java.awt.Image;
-import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import javax.swing.BorderFactory;
 import javax.swing.Timer;
+import utility.AvatarArchive;
+import utility.AvatarCache;
+import utility.BadgePayload;
 import utility.BDUtility;
 import java.sql.*;
 import java.time.Duration;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JDialog;
-import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import scan.FrameSampler;
+import scan.QrDecoder;
+import scan.ScanPipeline;
+import scan.StrategyStats;
 
 /**
  *
  * @author ASUS
  */
-public class MarkVisit extends javax.swing.JFrame implements Runnable, ThreadFactory {
+public class MarkVisit extends javax.swing.JFrame {
+
+    /** Size the wallpaper is drawn at, warmed by Login ahead of opening. */
+    static final Dimension WALLPAPER_SIZE = new Dimension(1366, 768);
 
     /**
      * Creates new form MarkVisit
      */
+    private static final int DECODER_THREADS = 2;
+    private static final boolean TRY_HARDER = Boolean.getBoolean("vms.scan.tryHarder");
+    private static final QrDecoder.Strategy DECODE_STRATEGY = QrDecoder.Strategy.valueOf(
+            System.getProperty("vms.scan.strategy", QrDecoder.Strategy.ROI_THEN_FULL.name()));
+    private static final long IDLE_FRAME_INTERVAL_MILLIS = 500;
+    private static final long ACTIVE_HOLD_MILLIS = 3000;
+    private static final double DEFAULT_CAMERA_FPS = 15;
+    private static final int AVATAR_WARM_LIMIT = 200;
+    private static final long DUPLICATE_SCAN_COOLDOWN_MILLIS = 5000;
+    private static final boolean WRITE_BEHIND = Boolean.parseBoolean(System.getProperty("vms.attendance.writeBehind", "true"));
+    private static final int STATUS_INTERVAL_MILLIS = 1000;
+
     private WebcamPanel panel = null;
     private Webcam webcam = null;
-    private ExecutorService executor = Executors.newSingleThreadExecutor(this);
-    private volatile boolean running = true;
+    private ScanPipeline<ScannedVisitor> pipeline = null;
+    private final StrategyStats roiDecodeStats = new StrategyStats("roiDecode");
+    private final StrategyStats fullDecodeStats = new StrategyStats("fullDecode");
+    private volatile AttendanceJournal journal = null;
+    private String status = "";
 
     public MarkVisit() {
         initComponents();
-        BDUtility.setImage(this, "images/abc1.png", 1366, 768);
+        BDUtility.setImage(this, "images/abc1.png", WALLPAPER_SIZE.width, WALLPAPER_SIZE.height);
         this.getRootPane().setBorder(BorderFactory.createMatteBorder(4, 4, 4, 4, Color.BLACK));
-        ensureUserAttendanceTableExists(); // Add this line
+        VisitorDirectory.getInstance().preloadAsync();
+        warmAvatars();
+        openJournal();
+        OfflineSnapshot.getInstance().start();
         initWebcam();
         Timer timer = new Timer(1, e -> updateTime());
         timer.start();
+        Timer statusTimer = new Timer(STATUS_INTERVAL_MILLIS, e -> updateStatus());
+        statusTimer.start();
     }
 
     private void updateTime() {
         SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        lbltime.setText(simpleDateFormat.format(new Date()));
+        lbltime.setText(simpleDateFormat.format(new Date()) + status);
 
     }
 
+    /**
+     * Shows next to the time whether the kiosk is offline and how many
+     * scans are waiting to be reconciled.
+     */
+    private void updateStatus() {
+        AttendanceJournal opened = journal;
+        int queued = opened == null ? 0 : opened.getOfflineLag();
+        if (!ConnectionProvider.isOnline()) {
+            status = "  OFFLINE, " + queued + " scans queued";
+        } else if (queued > 0) {
+            status = "  Reconciling " + queued + " scans";
+        } else {
+            status = "";
+        }
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -203,12 +236,7 @@ public class MarkVisit extends javax.swing.JFrame implements Runnable, ThreadFac
 
     private void btnExitActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnExitActionPerformed
         // TODO add your handling code here:
-        running = false;
         stopWebcam();
-
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
         this.dispose();
     }//GEN-LAST:event_btnExitActionPerformed
 
@@ -259,91 +287,31 @@ public class MarkVisit extends javax.swing.JFrame implements Runnable, ThreadFac
     private javax.swing.JPanel webCamPanel;
     // End of variables declaration//GEN-END:variables
 
-    // Add this method to create the table if it doesn't exist
-    private void ensureUserAttendanceTableExists() {
-        try {
-            Connection con = ConnectionProvider.getCon();
-            DatabaseMetaData dbm = con.getMetaData();
-            ResultSet tables = dbm.getTables(null, null, "userattendance", null);
-
-            if (!tables.next()) {
-                // Table doesn't exist, create it
-                Statement st = con.createStatement();
-                String createTableSQL = "CREATE TABLE userattendance (" +
-                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
-                    "userid INT NOT NULL, " +
-                    "date DATE NOT NULL, " +
-                    "checkin DATETIME, " +
-                    "checkout DATETIME, " +
-                    "workduration VARCHAR(100))";
-                st.executeUpdate(createTableSQL);
-                System.out.println("Created userattendance table");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error creating database table: " + e.getMessage(), 
-                "Database Error", JOptionPane.ERROR_MESSAGE);
-        }
-    }
-    Map<String, String> resultMap = new HashMap<String, String>();
-
-    @Override
-    public void run() {
-        do {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException ex) {
-            }
-
-            try {
-                Result result = null;
-                BufferedImage image = null;
-                if (webcam.isOpen()) {
-                    if ((image = webcam.getImage()) == null) {
-                        continue;
-                    }
-                }
-
-                LuminanceSource source = new BufferedImageLuminanceSource(image);
-                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-
-                try {
-                    result = new MultiFormatReader().decode(bitmap);
-                } catch (NotFoundException ex) {
-                    // Handle exception
-                }
-
-                if (result != null) {
-                    String jsonString = result.getText();
-                    Gson gson = new Gson();
-                    java.lang.reflect.Type type = new TypeToken<Map<String, String>>() {
-                    }.getType();
-                    resultMap = gson.fromJson(jsonString, type);
-
-                    String finalPath = BDUtility.getPath("images/" + resultMap.get("email") + ".png");
-
-                    System.out.println("Final Image Path: " + finalPath);
-                    File testFile = new File(finalPath);
-                    System.out.println("Does the file exist? " + testFile.exists());
-
-                    CircularImageFrame(finalPath);
-                }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
-
-        } while (running);
+    /**
+     * A decoded badge resolved to its registered visitor, with the avatar
+     * already rendered so the writer stage only has to record attendance.
+     */
+    private static class ScannedVisitor {
 
-    }
+        final Visitor visitor;
+        final AvatarCache.Avatar avatar;
 
-    @Override
-    public Thread newThread(Runnable r) {
-        Thread t = new Thread(r, "My Thread");
-        t.setDaemon(true);
-        return t;
+        ScannedVisitor(Visitor visitor, AvatarCache.Avatar avatar) {
+            this.visitor = visitor;
+            this.avatar = avatar;
+        }
     }
 
     private void stopWebcam() {
+        if (pipeline != null) {
+            pipeline.stop();
+            BDUtility.printStats(pipeline, roiDecodeStats + " " + fullDecodeStats, VisitorDirectory.getInstance(),
+                    AvatarCache.getInstance(), AvatarArchive.getInstance(), BadgeKeys.getInstance(),
+                    OfflineSnapshot.getInstance());
+            if (journal != null) {
+                BDUtility.printStats(journal);
+            }
+        }
         if (webcam != null && webcam.isOpen()) {
             webcam.close();
         }
@@ -367,8 +335,13 @@ public class MarkVisit extends javax.swing.JFrame implements Runnable, ThreadFac
             panel.setFPSDisplayed(true);
 
             webCamPanel.add(panel, new org.netbeans.lib.awtextra.AbsoluteConstraints(0, 0, 689, 518));
-            executor.execute(this);
-            executor.shutdown();
+            double fps = webcam.getFPS() > 0 ? webcam.getFPS() : DEFAULT_CAMERA_FPS;
+            FrameSampler sampler = new FrameSampler((long) (1000 / fps), IDLE_FRAME_INTERVAL_MILLIS, ACTIVE_HOLD_MILLIS);
+            pipeline = new ScanPipeline<>(webcam::getImage,
+                    () -> new QrDecoder(TRY_HARDER, DECODE_STRATEGY, roiDecodeStats, fullDecodeStats),
+                    this::resolveVisitor, this::checkInCheckOut, DECODER_THREADS, sampler,
+                    DUPLICATE_SCAN_COOLDOWN_MILLIS);
+            pipeline.start();
         } else {
             System.out.println("Issue with webcam.");
         }
@@ -376,53 +349,79 @@ public class MarkVisit extends javax.swing.JFrame implements Runnable, ThreadFac
     }
     private BufferedImage imagee = null;
 
-    private void CircularImageFrame(String imagePath) {
-        try {
-            Connection con = ConnectionProvider.getCon();
-            Statement st = con.createStatement();
-            ResultSet rs = st.executeQuery("select * from userdetails where email='" + resultMap.get("email") + "';");
-            if (!rs.next()) {
-                showPopUpForCertainDuration("User is not Registered or Deleted", "Invalid Qr", JOptionPane.ERROR_MESSAGE);
-                return;
+    /**
+     * Opens the attendance journal in the background, so events left from
+     * the last run start flushing before the first scan.
+     */
+    private void openJournal() {
+        if (!WRITE_BEHIND) {
+            return;
+        }
+        Thread t = new Thread(() -> {
+            try {
+                journal = AttendanceJournal.getInstance();
+            } catch (IOException ex) {
+                ex.printStackTrace();
             }
-            imagee = null;
-            File imageFile = new File(imagePath);
-            if (imageFile.exists()) {
-                try {
-                    imagee = ImageIO.read(new File(imagePath));
-                    imagee = createCircularImage(imagee);
-                    ImageIcon icon = new ImageIcon(imagee);
-                    lblImage.setIcon(icon);
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
-            } else {
-                BufferedImage imageeee = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g2d = imageeee.createGraphics();
-
-                g2d.setColor(Color.BLACK);
-                g2d.fillOval(25, 25, 250, 250);
-
-                g2d.setFont(new Font("Serif", Font.BOLD, 250));
-                g2d.setColor(Color.WHITE);
-                g2d.drawString(String.valueOf(resultMap.get("name").charAt(0)).toUpperCase(), 75, 225);
-                g2d.dispose();
-
-                ImageIcon imageIconn = new ImageIcon(imageeee);
-                lblImage.setIcon(imageIconn);
-                this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-                this.pack();
-                this.setLocationRelativeTo(null);
-                this.setVisible(true);
+        }, "AttendanceJournal Open");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void warmAvatars() {
+        AvatarArchive.getInstance().start();
+        Thread t = new Thread(() -> {
+            try {
+                AvatarCache.getInstance().warmAsync(VisitorDirectory.getInstance().findExpectedToday(AVATAR_WARM_LIMIT));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }, "Avatar Warm-up");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Resolver stage: parses the badge, checks the visitor is registered and
+     * renders the avatar. Returns null for badges that should be rejected.
+     * While the database is down, visitors this kiosk does not know of
+     * offline are turned away with a message saying so.
+     */
+    private ScannedVisitor resolveVisitor(String text) throws Exception {
+        BadgePayload.Badge badge = BadgePayload.parse(text);
+        Visitor registered = null;
+        boolean verified = false;
+        try {
+            if (badge != null) {
+                registered = badge.isLegacy()
+                        ? VisitorDirectory.getInstance().findByEmail(badge.email)
+                        : VisitorDirectory.getInstance().findById(badge.id);
             }
-            lblName.setHorizontalAlignment(JLabel.CENTER);
-            lblName.setText(resultMap.get("name"));
-            if (!checkInCheckOut()) {
-                return;
+            verified = registered != null && badge.verify(registered);
+        } catch (SQLException ex) {
+            if (ConnectionProvider.isOnline()) {
+                throw ex;
             }
-        } catch (Exception ex) {
-            ex.printStackTrace();
+            SwingUtilities.invokeLater(() -> showPopUpForCertainDuration("Database is offline and this visitor is not known to this kiosk",
+                    "Offline", JOptionPane.ERROR_MESSAGE));
+            return null;
         }
+        if (!verified) {
+            SwingUtilities.invokeLater(() -> showPopUpForCertainDuration("User is not Registered or Deleted", "Invalid Qr", JOptionPane.ERROR_MESSAGE));
+            return null;
+        }
+
+        AvatarCache.Avatar avatar = AvatarCache.getInstance().get(registered);
+        ScannedVisitor visitor = new ScannedVisitor(registered, avatar);
+        SwingUtilities.invokeLater(() -> showVisitor(visitor));
+        return visitor;
+    }
+
+    private void showVisitor(ScannedVisitor visitor) {
+        imagee = visitor.avatar.fromPhoto ? visitor.avatar.image : null;
+        lblImage.setIcon(new ImageIcon(visitor.avatar.image));
+        lblName.setHorizontalAlignment(JLabel.CENTER);
+        lblName.setText(visitor.visitor.getName());
     }
 
     private void showPopUpForCertainDuration(String popUpMessage, String popUpHeader, Integer iconId) throws HeadlessException {
@@ -450,102 +449,66 @@ public class MarkVisit extends javax.swing.JFrame implements Runnable, ThreadFac
         lblImage.setIcon(null);
     }
 
-    private BufferedImage createCircularImage(BufferedImage image) {
-        int diameter = 285;
-        BufferedImage resizedImage = new BufferedImage(diameter, diameter, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2 = resizedImage.createGraphics();
-        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-
-        g2.drawImage(image, 0, 0, diameter, diameter, null);
-        g2.dispose();
-
-        BufferedImage circularImage = new BufferedImage(diameter, diameter, BufferedImage.TYPE_INT_ARGB);
-        g2 = circularImage.createGraphics();
-        Ellipse2D.Double circle = new Ellipse2D.Double(0, 0, diameter, diameter);
-        g2.setClip(circle);
-        g2.drawImage(resizedImage, 0, 0, null);
-        g2.dispose();
-        return circularImage;
-    }
-
-    private boolean checkInCheckOut() throws HeadlessException, SQLException {
-        String popUpHeader = null;
-        String popUpMessage = null;
-        Color color = null;
-
-        Connection con = ConnectionProvider.getCon();
-        Statement st = con.createStatement();
-
-        LocalDate currentDate = LocalDate.now();
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        LocalDateTime currentDateTime = LocalDateTime.now();
+    /**
+     * Writer stage: records the check-in or check-out and hands the outcome
+     * to the EDT.
+     */
+    private void checkInCheckOut(ScannedVisitor scanned) throws SQLException, IOException {
         DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
-        ResultSet rs = st.executeQuery("select * from userattendance where date='"
-                + currentDate.format(dateFormatter) + "' and userid="
-                + Integer.valueOf(resultMap.get("id")) + ";");
-
-        Connection connection = ConnectionProvider.getCon();
-        if (rs.next()) {
-            String checkOutDateTime = rs.getString("checkout");
-            if (checkOutDateTime != null) {
-                popUpMessage = "Already CheckOut For the Day";
-                popUpHeader = "Invalid CheckOut";
-                showPopUpForCertainDuration(popUpMessage, popUpHeader, JOptionPane.ERROR_MESSAGE);
-                return false;
+        AttendanceResult result;
+        if (WRITE_BEHIND || !ConnectionProvider.isOnline()) {
+            result = journal().mark(scanned.visitor.getId(), LocalDateTime.now());
+        } else {
+            try {
+                result = AttendanceDao.mark(scanned.visitor.getId(), LocalDateTime.now());
+            } catch (SQLException ex) {
+                if (ConnectionProvider.isOnline()) {
+                    throw ex;
+                }
+                // The database went away; queue the scan until it is back.
+                result = journal().mark(scanned.visitor.getId(), LocalDateTime.now());
             }
+        }
 
-            String checkInDateTime = rs.getString("checkin");
-            LocalDateTime checkInLocalDateTime = LocalDateTime.parse(checkInDateTime, dateTimeFormatter);
-            Duration duration = Duration.between(checkInLocalDateTime, currentDateTime);
-
-            long hours = duration.toHours();
-            long minutes = duration.minusHours(hours).toMinutes();
-            long seconds = duration.minusHours(hours).minusMinutes(minutes).getSeconds();
-
-            if (!(hours > 0 || (hours == 0 && minutes >= 5))) {
-                long remainingMinutes = 4 - minutes;
-                long remainingSeconds = 60 - seconds;
-
-                popUpMessage = String.format("Your work duration is less than 5 minutes\nYou can check out after: %d minutes and %d seconds", remainingMinutes, remainingSeconds);
-                popUpHeader = "Duration Warning";
-
-                showPopUpForCertainDuration(popUpMessage, popUpHeader, JOptionPane.WARNING_MESSAGE);
-                return false;
-            }
+        switch (result.getState()) {
+            case ALREADY_CHECKED_OUT:
+                SwingUtilities.invokeLater(() -> showPopUpForCertainDuration("Already CheckOut For the Day", "Invalid CheckOut", JOptionPane.ERROR_MESSAGE));
+                break;
+            case TOO_EARLY:
+                long remainingMinutes = result.getRemaining().toMinutes();
+                long remainingSeconds = result.getRemaining().minusMinutes(remainingMinutes).getSeconds();
+                String warning = String.format("Your work duration is less than 5 minutes\nYou can check out after: %d minutes and %d seconds", remainingMinutes, remainingSeconds);
+                SwingUtilities.invokeLater(() -> showPopUpForCertainDuration(warning, "Duration Warning", JOptionPane.WARNING_MESSAGE));
+                break;
+            case CHECKED_OUT:
+                Duration duration = result.getWorkDuration();
+                long hours = duration.toHours();
+                long minutes = duration.minusHours(hours).toMinutes();
+                showCheckInCheckOut("CheckOut", "Checked Out at " + result.getCheckOut().format(dateTimeFormatter)
+                        + "\nWork Duration " + hours + " Hours and " + minutes + " Minutes", Color.RED);
+                break;
+            case CHECKED_IN:
+                showCheckInCheckOut("CheckIn", "Check In at " + result.getCheckIn().format(dateTimeFormatter), Color.GREEN);
+                break;
+        }
+    }
 
-            String updateQuery = "update userattendance set checkout=?, workduration=? where date=? and userid=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(updateQuery);
-            preparedStatement.setString(1, currentDateTime.format(dateTimeFormatter));
-            preparedStatement.setString(2, "" + hours + " Hours and " + minutes + " Minutes");
-            preparedStatement.setString(3, currentDate.format(dateFormatter));
-            preparedStatement.setString(4, resultMap.get("id"));
-
-            preparedStatement.executeUpdate();
-            popUpHeader = "CheckOut";
-            popUpMessage = "Checked Out at " + currentDateTime.format(dateTimeFormatter) + "\nWork Duration " + hours + " Hours and " + minutes + " Minutes";
-            color = Color.RED;
-        } else {
-            // CheckIn
-            String insertQuery = "INSERT INTO userattendance (userid,date,checkin) VALUES (?, ?, ?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(insertQuery);
-            preparedStatement.setString(1, resultMap.get("id"));
-            preparedStatement.setString(2, currentDate.format(dateFormatter));
-            preparedStatement.setString(3, currentDateTime.format(dateTimeFormatter));
-            preparedStatement.executeUpdate();
-            popUpHeader = "CheckIn";
-            popUpMessage = "Check In at " + currentDateTime.format(dateTimeFormatter);
-            color = Color.GREEN;
+    private AttendanceJournal journal() throws IOException {
+        if (journal == null) {
+            journal = AttendanceJournal.getInstance();
         }
+        return journal;
+    }
 
-        lblCheckInCheckOut.setHorizontalAlignment(JLabel.CENTER);
-        lblCheckInCheckOut.setText(popUpHeader);
-        lblCheckInCheckOut.setForeground(color);
-        lblCheckInCheckOut.setBackground(Color.DARK_GRAY);
-        lblCheckInCheckOut.setOpaque(true);
-        showPopUpForCertainDuration(popUpMessage, popUpHeader, JOptionPane.INFORMATION_MESSAGE);
-        return true;
+    private void showCheckInCheckOut(String popUpHeader, String popUpMessage, Color color) {
+        SwingUtilities.invokeLater(() -> {
+            lblCheckInCheckOut.setHorizontalAlignment(JLabel.CENTER);
+            lblCheckInCheckOut.setText(popUpHeader);
+            lblCheckInCheckOut.setForeground(color);
+            lblCheckInCheckOut.setBackground(Color.DARK_GRAY);
+            lblCheckInCheckOut.setOpaque(true);
+            showPopUpForCertainDuration(popUpMessage, popUpHeader, JOptionPane.INFORMATION_MESSAGE);
+        });
     }
 
     @Override
@@ -0,0 +1,115 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package forms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import utility.QrThumbnailIndex;
+
+/**
+ * Read-only table of the badge files in {@link QrThumbnailIndex}: a
+ * thumbnail, the email and the file size. Thumbnails are asked for as rows
+ * are painted and fill in as they arrive. Changes from the index are
+ * coalesced into one refresh per EDT turn; everything else runs on the EDT.
+ *
+ * @author ASUS
+ */
+public class QrFileTableModel extends AbstractTableModel implements QrThumbnailIndex.Listener {
+
+    private static final String[] COLUMN_NAMES = {"", "Email", "Size"};
+    private static final Comparator<QrThumbnailIndex.Entry> BY_NAME = Comparator.comparing(e -> e.name);
+
+    private final QrThumbnailIndex index;
+    private List<QrThumbnailIndex.Entry> rows = new ArrayList<>();
+    private volatile boolean refreshQueued = false;
+
+    public QrFileTableModel(QrThumbnailIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Starts listening to the index and shows what it has so far.
+     */
+    public void attach() {
+        index.setListener(this);
+        index.open();
+        refresh();
+    }
+
+    public void detach() {
+        index.setListener(null);
+    }
+
+    /**
+     * The file shown in a row, or null if there is no such row.
+     */
+    public QrThumbnailIndex.Entry getEntry(int row) {
+        return row >= 0 && row < rows.size() ? rows.get(row) : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 ? Icon.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        QrThumbnailIndex.Entry entry = rows.get(row);
+        switch (column) {
+            case 0:
+                return index.thumbnail(entry);
+            case 1:
+                return entry.getEmail();
+            case 2:
+                return (entry.length + 1023) / 1024 + " KB";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public void entriesChanged() {
+        if (!refreshQueued) {
+            refreshQueued = true;
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    @Override
+    public void thumbnailReady(QrThumbnailIndex.Entry entry) {
+        SwingUtilities.invokeLater(() -> {
+            int row = Collections.binarySearch(rows, entry, BY_NAME);
+            if (row >= 0 && rows.get(row) == entry) {
+                fireTableCellUpdated(row, 0);
+            }
+        });
+    }
+
+    private void refresh() {
+        refreshQueued = false;
+        rows = index.snapshot();
+        fireTableDataChanged();
+    }
+}
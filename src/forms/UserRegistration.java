@@ -4,20 +4,21 @@
  */
 package forms;
 
-import dao.ConnectionProvider;
+import dao.Visitor;
 import java.awt.Color;
-import java.awt.Image;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import javax.imageio.ImageIO;
-import static javax.imageio.ImageIO.read;
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import utility.BDUtility;
-import java.sql.Connection;
-import java.sql.*;
+import utility.ImageResampler;
+import utility.PhotoIngest;
+import utility.RegistrationJob;
 
 /**
  *
@@ -25,12 +26,15 @@ import java.sql.*;
  */
 public class UserRegistration extends javax.swing.JFrame {
 
+    /** Size the wallpaper is drawn at, warmed by Login ahead of opening. */
+    static final Dimension WALLPAPER_SIZE = new Dimension(1370, 680);
+
     /**
      * Creates new form UserRegistration
      */
     public UserRegistration() {
         initComponents();
-        BDUtility.setImage(this, "images/abc1.png", 1370, 680);
+        BDUtility.setImage(this, "images/abc1.png", WALLPAPER_SIZE.width, WALLPAPER_SIZE.height);
         this.getRootPane().setBorder(BorderFactory.createMatteBorder(4, 4, 4, 4, Color.BLACK));
     }
 
@@ -318,42 +322,27 @@ public class UserRegistration extends javax.swing.JFrame {
                 return;
             }
 
-            Connection connection = ConnectionProvider.getCon();
-            try{
-                Statement st=connection.createStatement();
-                ResultSet rs=st.executeQuery("select * from userdetails where email='"+email+"'");
-                if(rs.next()){
-                    JOptionPane.showMessageDialog(null, "Duplicate email.", "Duplicate", JOptionPane.WARNING_MESSAGE);
-                    return;
+            Visitor details = new Visitor(0, name, gender, email, contact, hostEmployeeDetails, companyName, country,
+                    uniqueRegId, null);
+            register(new RegistrationJob(details, photo, new RegistrationJob.Listener() {
+                @Override
+                public void progress(RegistrationJob.Step step) {
+                    // The photo is saved after the form has moved on to the next visitor.
+                    if (step != RegistrationJob.Step.PHOTO) {
+                        SwingUtilities.invokeLater(() -> btnRegister.setText(step.label + "..."));
+                    }
                 }
-            }catch(Exception ex){
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(null,ex);
-            }
-            
-            String imageName = saveImage(email);
-
-            Connection con = ConnectionProvider.getCon();
-            String insertQuery = "INSERT INTO userdetails (name, gender, email, contact, hostEmployeeDetails, companyName, country, uniqueregid, imageName) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-            PreparedStatement preparedStatement = con.prepareStatement(insertQuery);
-
-            preparedStatement.setString(1, name);
-            preparedStatement.setString(2, gender);
-            preparedStatement.setString(3, email);
-            preparedStatement.setString(4, contact);
-            preparedStatement.setString(5, hostEmployeeDetails);
-            preparedStatement.setString(6, companyName);
-            preparedStatement.setString(7, country);
-            preparedStatement.setString(8, uniqueRegId);
-            preparedStatement.setString(9, imageName);
-
-            preparedStatement.executeUpdate();
-
-            JOptionPane.showMessageDialog(null, "User Registered Successfully");
-
-            clearForm();
 
+                @Override
+                public void finished(RegistrationJob job, Exception error) {
+                    BDUtility.printStats(job, PhotoIngest.getInstance());
+                    if (error != null) {
+                        error.printStackTrace();
+                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null,
+                                "Photo of " + email + " could not be saved.", "Photo", JOptionPane.WARNING_MESSAGE));
+                    }
+                }
+            }));
 
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -361,38 +350,41 @@ public class UserRegistration extends javax.swing.JFrame {
 
     }//GEN-LAST:event_btnRegisterActionPerformed
 
-    BufferedImage originalImage = null;
-    File selectedFile = null;
+    /** The chosen photo, already normalized for storing. */
+    PhotoIngest.Photo photo = null;
     private void lblImageMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_lblImageMouseClicked
         // TODO add your handling code here:
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            selectedFile = fileChooser.getSelectedFile();
-            try {
-                originalImage = ImageIO.read(selectedFile);
-                int originalWidth = originalImage.getWidth();
-                int originalHeight = originalImage.getHeight();
-
-                int labelWidth = lblImage.getWidth();
-                int labelHeight = lblImage.getHeight();
-
-                double scaleX = (double) labelWidth / originalWidth;
-                double scaleY = (double) labelHeight / originalHeight;
-
-                double scale = Math.min(scaleX, scaleY);
-
-                int scaledWidth = (int) (originalWidth * scale);
-                int scaledHeight = (int) (originalHeight * scale);
-
-                Image scaledImage = originalImage.getScaledInstance(scaledWidth, scaledHeight, Image.SCALE_SMOOTH);
-
-                ImageIcon icon = new ImageIcon(scaledImage);
-                lblImage.setIcon(icon);
+            File file = fileChooser.getSelectedFile();
+            int width = lblImage.getWidth();
+            int height = lblImage.getHeight();
+            // Phone photos take a while to decode; Register waits until this one is in.
+            btnRegister.setEnabled(false);
+            new SwingWorker<Object[], Void>() {
+                @Override
+                protected Object[] doInBackground() throws Exception {
+                    PhotoIngest.Photo read = PhotoIngest.read(file);
+                    return read == null ? null : new Object[]{read, ImageResampler.fit(read.image, width, height)};
+                }
 
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+                @Override
+                protected void done() {
+                    btnRegister.setEnabled(true);
+                    try {
+                        Object[] loaded = get();
+                        if (loaded == null) {
+                            JOptionPane.showMessageDialog(null, "Not an image.", "Invalid", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        photo = (PhotoIngest.Photo) loaded[0];
+                        lblImage.setIcon(new ImageIcon((BufferedImage) loaded[1]));
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            }.execute();
         }
 
     }//GEN-LAST:event_lblImageMouseClicked
@@ -426,24 +418,40 @@ public class UserRegistration extends javax.swing.JFrame {
         radioMale.setSelected(false);
         radioFemale.setSelected(false);
         lblImage.setIcon(null);
+        photo = null;
 
     }
 
-    private String saveImage(String email) {
-        if (originalImage != null && selectedFile != null) {
-            try {
-                String savePath = BDUtility.getPath("images\\");
-                String extension = BDUtility.getFileExtension(selectedFile.getName());
-                String imageName = email + "." + extension;
-                File saveFile = new File(savePath + imageName);
-                BufferedImage scaledImage = BDUtility.scaleImage(originalImage, ImageIO.read(selectedFile));
-                ImageIO.write(scaledImage, extension, saveFile);
-                return imageName;
-            } catch (Exception ex) {
-                ex.printStackTrace();
+    /**
+     * Runs a registration off the EDT. The form is cleared for the next
+     * visitor once the row is written; the photo is saved after that.
+     */
+    private void register(RegistrationJob job) {
+        btnRegister.setEnabled(false);
+        new SwingWorker<RegistrationJob.Result, Void>() {
+            @Override
+            protected RegistrationJob.Result doInBackground() throws Exception {
+                return job.run();
             }
-        }
-        return null;
+
+            @Override
+            protected void done() {
+                btnRegister.setText("Register");
+                btnRegister.setEnabled(true);
+                try {
+                    if (get() == RegistrationJob.Result.DUPLICATE_EMAIL) {
+                        JOptionPane.showMessageDialog(null, "Duplicate email.", "Duplicate", JOptionPane.WARNING_MESSAGE);
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(null, "User Registered Successfully");
+                    clearForm();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                    JOptionPane.showMessageDialog(null, "Something went wrong: " + cause.getMessage());
+                }
+            }
+        }.execute();
     }
 
     /**
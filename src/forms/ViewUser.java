@@ -4,33 +4,52 @@
  */
 package forms;
 
-import dao.ConnectionProvider;
+import dao.Visitor;
+import dao.VisitorSearch;
 import java.awt.Color;
-import java.awt.Image;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import javax.swing.BorderFactory;
 import utility.BDUtility;
-import java.sql.*;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JOptionPane;
-import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableModel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import utility.ImageResampler;
+import utility.PhotoStore;
 /**
  *
  * @author ASUS
  */
 public class ViewUser extends javax.swing.JFrame {
 
+    /** Size the wallpaper is drawn at, warmed by Login ahead of opening. */
+    static final Dimension WALLPAPER_SIZE = new Dimension(1312, 644);
+
     /**
      * Creates new form ViewUser
      */
+    private static final int SEARCH_DEBOUNCE_MILLIS = 250;
+
+    private final Timer searchDebounce;
+    private final String[] columnNames;
+    private VisitorTableModel userModel = null;
+    /** Reads the selected visitor's photo; replaced on every click. */
+    private SwingWorker<BufferedImage, Void> photoLoader = null;
+
     public ViewUser() {
         initComponents();
-        BDUtility.setImage(this,"images/abc1.png",1312,644);
+        BDUtility.setImage(this, "images/abc1.png", WALLPAPER_SIZE.width, WALLPAPER_SIZE.height);
         this.getRootPane().setBorder(BorderFactory.createMatteBorder(4,4,4,4,Color.BLACK));
+        searchDebounce = new Timer(SEARCH_DEBOUNCE_MILLIS, e -> fetchUser(txtSearch.getText()));
+        searchDebounce.setRepeats(false);
+        columnNames = VisitorTableModel.columnNamesOf(userTable.getModel());
     }
 
     /**
@@ -252,78 +271,75 @@ public class ViewUser extends javax.swing.JFrame {
 
     private void formComponentShown(java.awt.event.ComponentEvent evt) {//GEN-FIRST:event_formComponentShown
         // TODO add your handling code here:
-        try{
-            fetchUser(null);
-        }catch(Exception ex){
-            ex.printStackTrace();
-        }
+        fetchUser(null);
     }//GEN-LAST:event_formComponentShown
 
     private void txtSearchKeyReleased(java.awt.event.KeyEvent evt) {//GEN-FIRST:event_txtSearchKeyReleased
-        try {
-            // TODO add your handling code here:
-            lblImage.setIcon(null);
-            fetchUser(txtSearch.getText().toString());
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        // TODO add your handling code here:
+        lblImage.setIcon(null);
+        if (photoLoader != null) {
+            photoLoader.cancel(false);
+            photoLoader = null;
         }
+        searchDebounce.restart();
     }//GEN-LAST:event_txtSearchKeyReleased
 
     private void userTableMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_userTableMouseClicked
         // TODO add your handling code here:
         int index=userTable.getSelectedRow();
-        TableModel model=userTable.getModel();
-        String name=Objects.isNull(model.getValueAt(index, 9))?null:model.getValueAt(index, 9).toString();
-        if(!Objects.isNull(name)){
-            String imagePath=BDUtility.getPath("/images"+File.separator + name);
-            File imageFile=new File(imagePath);
-            if(imageFile.exists()){
-                ImageIcon icon=new ImageIcon(imagePath);
-                Image image=icon.getImage().getScaledInstance(332, 286, Image.SCALE_SMOOTH);
-                ImageIcon resizedIcon=new ImageIcon(image);
-                lblImage.setIcon(resizedIcon);
-            }else{
-                lblImage.setIcon(null);
-                JOptionPane.showMessageDialog(null,"Either image has been deleted or not found.","Image not found",JOptionPane.WARNING_MESSAGE);
-            }
-        }else{
-            lblImage.setIcon(null);
+        Visitor visitor=userModel.getVisitor(index);
+        if (photoLoader != null) {
+            photoLoader.cancel(false);
+            photoLoader = null;
         }
-    }//GEN-LAST:event_userTableMouseClicked
+        lblImage.setIcon(null);
+        if(!Objects.isNull(visitor) && !Objects.isNull(visitor.getImageName())){
+            // A master photo can take a few hundred ms to decode; keep the table responsive meanwhile.
+            photoLoader = new SwingWorker<BufferedImage, Void>() {
+                @Override
+                protected BufferedImage doInBackground() throws IOException {
+                    File imageFile = PhotoStore.getInstance().masterOf(visitor);
+                    BufferedImage photo = imageFile != null ? ImageIO.read(imageFile) : null;
+                    return photo == null ? null : ImageResampler.resize(photo, 332, 286);
+                }
 
-    private void fetchUser(String searchText) throws Exception {
-    DefaultTableModel model = (DefaultTableModel) userTable.getModel();
-    model.setRowCount(0);
-    try {
-        Connection con = ConnectionProvider.getCon();
-        Statement st = con.createStatement();
-        String query = null;
-        if (Objects.isNull(searchText)) {
-            query = "select * from userdetails";
-        } else {
-            query = "select * from userdetails where name like '%" + searchText + "%' or email like '%" + searchText + "%'";
+                @Override
+                protected void done() {
+                    // Another row was clicked since.
+                    if (photoLoader != this) {
+                        return;
+                    }
+                    photoLoader = null;
+                    BufferedImage photo = null;
+                    try {
+                        photo = get();
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                    }
+                    if(photo != null){
+                        lblImage.setIcon(new ImageIcon(photo));
+                    }else{
+                        JOptionPane.showMessageDialog(null,"Either image has been deleted or not found.","Image not found",JOptionPane.WARNING_MESSAGE);
+                    }
+                }
+            };
+            photoLoader.execute();
         }
-        ResultSet rs = st.executeQuery(query);
-        while (rs.next()) {
-    model.addRow(new Object[]{
-        rs.getString("id"),
-        rs.getString("name"),
-        rs.getString("gender"),
-        rs.getString("email"),
-        rs.getString("contact"),
-        rs.getString("hostEmployeeDetails"),
-        rs.getString("companyName"),
-        rs.getString("country"),
-        rs.getString("uniqueregid"),
-        rs.getString("imagename")
-    });
-}
+    }//GEN-LAST:event_userTableMouseClicked
 
-    } catch (Exception ex) {
-        ex.printStackTrace();
-        JOptionPane.showMessageDialog(null, "Something went wrong.");
+    /**
+     * Starts a new search, cancelling the one in flight. The table only
+     * reads the rows that are scrolled into view.
+     */
+    private void fetchUser(String searchText) {
+        searchDebounce.stop();
+        if (userModel != null) {
+            userModel.dispose();
+        }
+        userModel = new VisitorTableModel(columnNames, new VisitorSearch(searchText));
+        userTable.setModel(userModel);
+        userModel.load();
     }
-}
 
     
     /**
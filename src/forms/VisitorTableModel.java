@@ -0,0 +1,245 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package forms;
+
+import dao.Visitor;
+import dao.VisitorSearch;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+
+/**
+ * Read-only table of visitors that only holds the rows around what is on
+ * screen. The row count is read once when the model loads; rows are read
+ * in blocks the first time the table asks for a cell in them, and a
+ * bounded number of recently used blocks is kept. Cells of a block that is
+ * still loading are empty until it arrives; a block that fails to load is
+ * asked for again after vms.table.retryMillis (5 seconds).
+ *
+ * Columns follow the userdetails order (id, name, gender, email, contact,
+ * host, company, country, registration id, image name); a table may show
+ * only the first few. Apart from the background loader, everything runs on
+ * the EDT.
+ *
+ * @author ASUS
+ */
+public class VisitorTableModel extends AbstractTableModel {
+
+    private static final int BLOCK_SIZE = Integer.getInteger("vms.table.blockSize", 100);
+    private static final int MAX_BLOCKS = Integer.getInteger("vms.table.maxBlocks", 20);
+    private static final int RETRY_MILLIS = Integer.getInteger("vms.table.retryMillis", 5_000);
+
+    private final String[] columnNames;
+    private final VisitorSearch search;
+    private int rowCount = 0;
+    private final Map<Integer, List<Visitor>> blocks = new LinkedHashMap<Integer, List<Visitor>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Visitor>> eldest) {
+            return size() > MAX_BLOCKS;
+        }
+    };
+    private final Set<Integer> pending = new HashSet<>();
+    /** Requested blocks, newest last; the loader always takes the newest. */
+    private final Deque<Integer> requests = new ArrayDeque<>();
+    private final ThreadPoolExecutor loader;
+    /** The last block read failed; read by the loader only. */
+    private boolean failing = false;
+
+    public VisitorTableModel(String[] columnNames, VisitorSearch search) {
+        this.columnNames = columnNames;
+        this.search = search;
+        this.loader = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "VisitorTableModel Loader");
+            t.setDaemon(true);
+            return t;
+        });
+        this.loader.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Column names of the model a form was designed with.
+     */
+    public static String[] columnNamesOf(TableModel model) {
+        String[] names = new String[model.getColumnCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = model.getColumnName(i);
+        }
+        return names;
+    }
+
+    /**
+     * Reads the row count in the background and then shows the rows.
+     */
+    public void load() {
+        loader.execute(() -> {
+            try {
+                int count = search.count();
+                SwingUtilities.invokeLater(() -> {
+                    rowCount = count;
+                    fireTableDataChanged();
+                });
+            } catch (SQLException ex) {
+                reportFailure(ex);
+            }
+        });
+    }
+
+    /**
+     * Stops loading; used when the table switches to another model.
+     */
+    public void dispose() {
+        search.cancel();
+        loader.shutdownNow();
+    }
+
+    /**
+     * The visitor shown in a row, or null while its block is loading.
+     */
+    public Visitor getVisitor(int row) {
+        int block = row / BLOCK_SIZE;
+        List<Visitor> rows = blocks.get(block);
+        if (rows == null) {
+            request(block);
+            return null;
+        }
+        int i = row % BLOCK_SIZE;
+        return i < rows.size() ? rows.get(i) : null;
+    }
+
+    /**
+     * Row of a visitor, or -1 if it is not in this table.
+     */
+    public int indexOf(int id) throws SQLException {
+        int row = search.indexOf(id);
+        return row < rowCount ? row : -1;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Visitor visitor = getVisitor(row);
+        if (visitor == null) {
+            return null;
+        }
+        switch (column) {
+            case 0:
+                return String.valueOf(visitor.getId());
+            case 1:
+                return visitor.getName();
+            case 2:
+                return visitor.getGender();
+            case 3:
+                return visitor.getEmail();
+            case 4:
+                return visitor.getContact();
+            case 5:
+                return visitor.getHostEmployeeDetails();
+            case 6:
+                return visitor.getCompanyName();
+            case 7:
+                return visitor.getCountry();
+            case 8:
+                return visitor.getUniqueRegId();
+            case 9:
+                return visitor.getImageName();
+            default:
+                return null;
+        }
+    }
+
+    private void request(int block) {
+        if (loader.isShutdown() || !pending.add(block)) {
+            return;
+        }
+        synchronized (requests) {
+            requests.addLast(block);
+            // Blocks scrolled past long ago are not worth loading any more.
+            while (requests.size() > MAX_BLOCKS) {
+                pending.remove(requests.removeFirst());
+            }
+        }
+        loader.execute(this::loadNewestRequest);
+    }
+
+    private void loadNewestRequest() {
+        Integer block;
+        synchronized (requests) {
+            block = requests.pollLast();
+        }
+        if (block == null) {
+            return;
+        }
+        try {
+            List<Visitor> rows = search.fetch(block * BLOCK_SIZE, BLOCK_SIZE);
+            failing = false;
+            SwingUtilities.invokeLater(() -> {
+                pending.remove(block);
+                if (search.isCancelled()) {
+                    return;
+                }
+                blocks.put(block, rows);
+                int first = block * BLOCK_SIZE;
+                int last = Math.min(rowCount, first + BLOCK_SIZE) - 1;
+                if (first <= last) {
+                    fireTableRowsUpdated(first, last);
+                }
+            });
+        } catch (SQLException ex) {
+            // Reported once until a block loads again, not for every block on screen.
+            if (failing) {
+                ex.printStackTrace();
+            } else {
+                failing = true;
+                reportFailure(ex);
+            }
+            // Pending until the delay is up, so a failing query is not retried on every repaint.
+            Timer retry = new Timer(RETRY_MILLIS, e -> {
+                pending.remove(block);
+                int first = block * BLOCK_SIZE;
+                int last = Math.min(rowCount, first + BLOCK_SIZE) - 1;
+                if (!search.isCancelled() && first <= last) {
+                    fireTableRowsUpdated(first, last);
+                }
+            });
+            retry.setRepeats(false);
+            retry.start();
+        }
+    }
+
+    private void reportFailure(SQLException ex) {
+        if (search.isCancelled()) {
+            return;
+        }
+        ex.printStackTrace();
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, "Something went wrong."));
+    }
+}
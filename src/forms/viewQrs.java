@@ -5,13 +5,13 @@
 package forms;
 
 import java.awt.Color;
-import java.awt.Image;
-import java.io.File;
+import java.awt.Dimension;
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
-import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableModel;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableColumn;
 import utility.BDUtility;
+import utility.QrThumbnailIndex;
 
 /**
  *
@@ -19,13 +19,21 @@ import utility.BDUtility;
  */
 public class viewQrs extends javax.swing.JFrame {
 
+    /** Size the wallpaper is drawn at, warmed by Login ahead of opening. */
+    static final Dimension WALLPAPER_SIZE = new Dimension(880, 500);
+
+    private static final int PREVIEW_SIZE = 286;
+
+    private QrFileTableModel fileModel;
+
     /**
      * Creates new form viewQrs
      */
     public viewQrs() {
         initComponents();
-        BDUtility.setImage(this, "images/abc1.png", 880, 500);
+        BDUtility.setImage(this, "images/abc1.png", WALLPAPER_SIZE.width, WALLPAPER_SIZE.height);
         this.getRootPane().setBorder(BorderFactory.createMatteBorder(4, 4, 4, 4, Color.BLACK));
+        tblQrList.setRowHeight(QrThumbnailIndex.THUMB_SIZE + 4);
     }
 
     /**
@@ -150,28 +158,29 @@ public class viewQrs extends javax.swing.JFrame {
     }//GEN-LAST:event_btnExitActionPerformed
 
     private void formComponentShown(java.awt.event.ComponentEvent evt) {//GEN-FIRST:event_formComponentShown
-        // TODO add your handling code here:
-        DefaultTableModel model=(DefaultTableModel) tblQrList.getModel();
-        File directory=new File(BDUtility.getPath("/qrCodes"));
-        File[] files= directory.listFiles();
-        
-        if(files!=null){
-            for(File file : files){
-                model.addRow(new Object[] {file.getName(), file.length()});
-                
-            }
+        if (fileModel != null) {
+            return;
         }
+        fileModel = new QrFileTableModel(QrThumbnailIndex.getInstance());
+        tblQrList.setModel(fileModel);
+        TableColumn thumbnail = tblQrList.getColumnModel().getColumn(0);
+        thumbnail.setMinWidth(QrThumbnailIndex.THUMB_SIZE + 8);
+        thumbnail.setMaxWidth(QrThumbnailIndex.THUMB_SIZE + 8);
+        tblQrList.getColumnModel().getColumn(2).setMaxWidth(80);
+        fileModel.attach();
     }//GEN-LAST:event_formComponentShown
 
     private void tblQrListMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_tblQrListMouseClicked
-        // TODO add your handling code here:
-        int index = tblQrList.getSelectedRow();
-        TableModel model = tblQrList.getModel();
-        String name = model.getValueAt(index, 0).toString();
-        ImageIcon icon = new ImageIcon(BDUtility.getPath("qrCodes" + File.separator + name));
-        Image image = icon.getImage().getScaledInstance(322, 286, Image.SCALE_SMOOTH);
-        ImageIcon resizedIcon = new ImageIcon(image);
-        lblImage.setIcon(resizedIcon);
+        QrThumbnailIndex.Entry entry = fileModel == null ? null : fileModel.getEntry(tblQrList.getSelectedRow());
+        if (entry == null) {
+            return;
+        }
+        QrThumbnailIndex.getInstance().preview(entry, PREVIEW_SIZE, image -> SwingUtilities.invokeLater(() -> {
+            // Only show it if the user has not moved on to another badge.
+            if (fileModel.getEntry(tblQrList.getSelectedRow()) == entry) {
+                lblImage.setIcon(new ImageIcon(image));
+            }
+        }));
 
     }//GEN-LAST:event_tblQrListMouseClicked
 
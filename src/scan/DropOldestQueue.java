@@ -0,0 +1,67 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package scan;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue that never blocks the producer: when full, the oldest
+ * element is discarded to make room. Used for camera frames, where only the
+ * most recent picture is worth decoding.
+ *
+ * @author ASUS
+ */
+public class DropOldestQueue<T> {
+
+    private final ArrayDeque<T> items;
+    private final int capacity;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public DropOldestQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.items = new ArrayDeque<>(capacity);
+    }
+
+    public synchronized void offer(T item) {
+        if (items.size() == capacity) {
+            items.pollFirst();
+            dropped.incrementAndGet();
+        }
+        items.addLast(item);
+        notifyAll();
+    }
+
+    /**
+     * Waits up to the given time for an element, returning null on timeout.
+     */
+    public synchronized T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (items.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return items.pollFirst();
+    }
+
+    public synchronized void clear() {
+        items.clear();
+    }
+
+    public synchronized int size() {
+        return items.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package scan;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Decides which captured frames are worth a full QR decode and how fast the
+ * camera should be polled. Each frame is reduced to a small luminance plane;
+ * motion against the previous plane, or local contrast well above the empty
+ * scene, marks a candidate. While candidates keep appearing the grabber runs
+ * at the camera frame rate, otherwise it backs off to the idle rate.
+ *
+ * Not thread-safe, it is driven by the grabber thread only.
+ *
+ * @author ASUS
+ */
+public class FrameSampler {
+
+    private static final int PLANE_WIDTH = 64;
+    private static final int PLANE_HEIGHT = 48;
+    /** Mean absolute luminance change (0-255) that counts as motion. */
+    private static final double MOTION_THRESHOLD = 6.0;
+    /** Edge density above the background baseline that counts as a new object. */
+    private static final double CONTRAST_MARGIN = 0.04;
+    private static final int EDGE_STEP = 40;
+
+    private final long activeIntervalMillis;
+    private final long idleIntervalMillis;
+    private final long holdMillis;
+
+    private int[] previous = new int[PLANE_WIDTH * PLANE_HEIGHT];
+    private int[] current = new int[PLANE_WIDTH * PLANE_HEIGHT];
+    private boolean hasPrevious = false;
+    private double baselineEdgeDensity = -1;
+    private long activeUntil = 0;
+
+    public FrameSampler(long activeIntervalMillis, long idleIntervalMillis, long holdMillis) {
+        this.activeIntervalMillis = activeIntervalMillis;
+        this.idleIntervalMillis = idleIntervalMillis;
+        this.holdMillis = holdMillis;
+    }
+
+    /**
+     * Inspects a frame and returns true if it should be decoded.
+     */
+    public boolean shouldDecode(BufferedImage frame) {
+        sampleLuminance(frame, current);
+
+        double motion = hasPrevious ? meanAbsoluteDifference(previous, current) : Double.MAX_VALUE;
+        double edges = edgeDensity(current);
+        if (baselineEdgeDensity < 0) {
+            baselineEdgeDensity = edges;
+        }
+
+        boolean candidate = motion > MOTION_THRESHOLD || edges > baselineEdgeDensity + CONTRAST_MARGIN;
+        long now = System.currentTimeMillis();
+        if (candidate) {
+            activeUntil = now + holdMillis;
+            // Drift slowly so an object left in view eventually becomes background.
+            baselineEdgeDensity = baselineEdgeDensity * 0.995 + edges * 0.005;
+        } else {
+            baselineEdgeDensity = baselineEdgeDensity * 0.95 + edges * 0.05;
+        }
+
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        hasPrevious = true;
+        return now < activeUntil;
+    }
+
+    /**
+     * Delay before the next capture: the camera frame interval while
+     * something is in view, the idle interval otherwise.
+     */
+    public long nextIntervalMillis() {
+        return System.currentTimeMillis() < activeUntil ? activeIntervalMillis : idleIntervalMillis;
+    }
+
+    private static void sampleLuminance(BufferedImage frame, int[] plane) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int i = 0;
+        for (int y = 0; y < PLANE_HEIGHT; y++) {
+            int sy = (y * height + height / 2) / PLANE_HEIGHT;
+            for (int x = 0; x < PLANE_WIDTH; x++) {
+                int sx = (x * width + width / 2) / PLANE_WIDTH;
+                int rgb = frame.getRGB(sx, sy);
+                int r = (rgb >> 16) & 0xff;
+                int g = (rgb >> 8) & 0xff;
+                int b = rgb & 0xff;
+                plane[i++] = (r * 77 + g * 150 + b * 29) >> 8;
+            }
+        }
+    }
+
+    private static double meanAbsoluteDifference(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return (double) sum / a.length;
+    }
+
+    private static double edgeDensity(int[] plane) {
+        int edges = 0;
+        for (int y = 0; y < PLANE_HEIGHT - 1; y++) {
+            int row = y * PLANE_WIDTH;
+            for (int x = 0; x < PLANE_WIDTH - 1; x++) {
+                int v = plane[row + x];
+                if (Math.abs(v - plane[row + x + 1]) > EDGE_STEP || Math.abs(v - plane[row + x + PLANE_WIDTH]) > EDGE_STEP) {
+                    edges++;
+                }
+            }
+        }
+        return (double) edges / ((PLANE_WIDTH - 1) * (PLANE_HEIGHT - 1));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * QR decoder context for one decoder thread. The reader is configured once
+ * for QR_CODE only, and the luminance planes and binarizer buffers are kept
+ * between frames and only reallocated when the frame size changes. Not
+ * thread-safe.
+ *
+ * With {@link Strategy#ROI_THEN_FULL} a downscaled region of interest is
+ * tried first and the full frame only on a miss. The region is centred on
+ * the frame, or on the last decoded code while it is recent.
+ *
+ * @author ASUS
+ */
+public class QrDecoder implements ScanPipeline.FrameDecoder {
+
+    public enum Strategy {
+        FULL_FRAME, ROI_THEN_FULL
+    }
+
+    /** Share of the frame width and height covered by the region of interest. */
+    private static final double ROI_FRACTION = 0.6;
+    /** The region of interest is downscaled until it is at most this wide. */
+    private static final int ROI_MAX_WIDTH = 640;
+    /** Frames too small for a useful crop go straight to the full frame path. */
+    private static final int ROI_MIN_SIZE = 120;
+    private static final long SEED_TTL_MILLIS = 2000;
+
+    private final MultiFormatReader reader = new MultiFormatReader();
+    private final Strategy strategy;
+    private final StrategyStats roiStats;
+    private final StrategyStats fullStats;
+
+    private Plane roiPlane = null;
+    private Plane fullPlane = null;
+    private int[] rowBuffer = new int[0];
+
+    private int seedX;
+    private int seedY;
+    private long seedAt = 0;
+
+    public QrDecoder(boolean tryHarder, Strategy strategy, StrategyStats roiStats, StrategyStats fullStats) {
+        this.strategy = strategy;
+        this.roiStats = roiStats;
+        this.fullStats = fullStats;
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE));
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        reader.setHints(hints);
+    }
+
+    @Override
+    public String decode(BufferedImage frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+
+        int roiWidth = (int) (width * ROI_FRACTION);
+        int roiHeight = (int) (height * ROI_FRACTION);
+        if (strategy == Strategy.ROI_THEN_FULL && roiWidth >= ROI_MIN_SIZE && roiHeight >= ROI_MIN_SIZE) {
+            int step = Math.max(1, (roiWidth + ROI_MAX_WIDTH - 1) / ROI_MAX_WIDTH);
+            roiPlane = ensurePlane(roiPlane, roiWidth / step, roiHeight / step);
+
+            boolean seeded = System.currentTimeMillis() - seedAt < SEED_TTL_MILLIS;
+            int centreX = seeded ? seedX : width / 2;
+            int centreY = seeded ? seedY : height / 2;
+            int left = Math.max(0, Math.min(width - roiWidth, centreX - roiWidth / 2));
+            int top = Math.max(0, Math.min(height - roiHeight, centreY - roiHeight / 2));
+
+            String text = decodePlane(frame, roiPlane, left, top, step, roiStats);
+            if (text != null) {
+                return text;
+            }
+        }
+
+        fullPlane = ensurePlane(fullPlane, width, height);
+        return decodePlane(frame, fullPlane, 0, 0, 1, fullStats);
+    }
+
+    private Plane ensurePlane(Plane plane, int width, int height) {
+        if (plane == null || plane.getWidth() != width || plane.getHeight() != height) {
+            plane = new Plane(width, height);
+        }
+        return plane;
+    }
+
+    private String decodePlane(BufferedImage frame, Plane plane, int left, int top, int step, StrategyStats stats) {
+        long start = System.nanoTime();
+        plane.load(frame, left, top, step);
+        try {
+            Result result = reader.decodeWithState(new BinaryBitmap(plane.binarizer));
+            rememberLocation(result, left, top, step);
+            stats.record(System.nanoTime() - start, true);
+            return result.getText();
+        } catch (NotFoundException ex) {
+            stats.record(System.nanoTime() - start, false);
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    private void rememberLocation(Result result, int left, int top, int step) {
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null || points.length == 0) {
+            return;
+        }
+        float sumX = 0;
+        float sumY = 0;
+        for (ResultPoint point : points) {
+            sumX += point.getX();
+            sumY += point.getY();
+        }
+        seedX = left + (int) (sumX / points.length) * step;
+        seedY = top + (int) (sumY / points.length) * step;
+        seedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Luminance plane that is refilled in place from a (possibly cropped and
+     * subsampled) area of each frame.
+     */
+    private class Plane extends LuminanceSource {
+
+        private final byte[] luminances;
+        final ReusableHybridBinarizer binarizer;
+
+        Plane(int width, int height) {
+            super(width, height);
+            luminances = new byte[width * height];
+            binarizer = new ReusableHybridBinarizer(this);
+        }
+
+        void load(BufferedImage frame, int left, int top, int step) {
+            int width = getWidth();
+            int height = getHeight();
+            int frameWidth = frame.getWidth();
+            if (frame.getType() == BufferedImage.TYPE_3BYTE_BGR
+                    && frame.getRaster().getDataBuffer() instanceof DataBufferByte
+                    && frame.getRaster().getParent() == null) {
+                byte[] bgr = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+                int i = 0;
+                for (int y = 0; y < height; y++) {
+                    int p = ((top + y * step) * frameWidth + left) * 3;
+                    for (int x = 0; x < width; x++, p += 3 * step) {
+                        int b = bgr[p] & 0xff;
+                        int g = bgr[p + 1] & 0xff;
+                        int r = bgr[p + 2] & 0xff;
+                        luminances[i++] = (byte) ((r + 2 * g + b) >> 2);
+                    }
+                }
+            } else {
+                int span = (width - 1) * step + 1;
+                if (rowBuffer.length < span) {
+                    rowBuffer = new int[span];
+                }
+                int i = 0;
+                for (int y = 0; y < height; y++) {
+                    frame.getRGB(left, top + y * step, span, 1, rowBuffer, 0, span);
+                    for (int x = 0; x < width; x++) {
+                        int rgb = rowBuffer[x * step];
+                        int r = (rgb >> 16) & 0xff;
+                        int g = (rgb >> 8) & 0xff;
+                        int b = rgb & 0xff;
+                        luminances[i++] = (byte) ((r + 2 * g + b) >> 2);
+                    }
+                }
+            }
+            binarizer.invalidate();
+        }
+
+        @Override
+        public byte[] getRow(int y, byte[] row) {
+            int width = getWidth();
+            if (row == null || row.length < width) {
+                row = new byte[width];
+            }
+            System.arraycopy(luminances, y * width, row, 0, width);
+            return row;
+        }
+
+        @Override
+        public byte[] getMatrix() {
+            return luminances;
+        }
+    }
+}
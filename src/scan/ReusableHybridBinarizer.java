@@ -0,0 +1,154 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package scan;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * Same local block thresholding as ZXing's {@link HybridBinarizer}, but the
+ * bit matrix and the per-block black points are kept and overwritten for
+ * every frame instead of being allocated again. It stays bound to one
+ * luminance source whose contents change between frames, so the caller must
+ * call {@link #invalidate()} after refilling the source.
+ *
+ * @author ASUS
+ */
+class ReusableHybridBinarizer extends GlobalHistogramBinarizer {
+
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    private final int subWidth;
+    private final int subHeight;
+    private final int[][] blackPoints;
+    private final BitMatrix matrix;
+    private boolean valid = false;
+
+    ReusableHybridBinarizer(LuminanceSource source) {
+        super(source);
+        int width = source.getWidth();
+        int height = source.getHeight();
+        subWidth = (width >> BLOCK_SIZE_POWER) + ((width & BLOCK_SIZE_MASK) != 0 ? 1 : 0);
+        subHeight = (height >> BLOCK_SIZE_POWER) + ((height & BLOCK_SIZE_MASK) != 0 ? 1 : 0);
+        blackPoints = new int[subHeight][subWidth];
+        matrix = new BitMatrix(width, height);
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+            return new HybridBinarizer(source).getBlackMatrix();
+        }
+        if (!valid) {
+            byte[] luminances = source.getMatrix();
+            calculateBlackPoints(luminances, width, height);
+            matrix.clear();
+            calculateThresholdForBlock(luminances, width, height);
+            valid = true;
+        }
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new ReusableHybridBinarizer(source);
+    }
+
+    private void calculateThresholdForBlock(byte[] luminances, int width, int height) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            int top = cap(y, 2, subHeight - 3);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int left = cap(x, 2, subWidth - 3);
+                int sum = 0;
+                for (int z = -2; z <= 2; z++) {
+                    int[] blackRow = blackPoints[top + z];
+                    sum += blackRow[left - 2] + blackRow[left - 1] + blackRow[left] + blackRow[left + 1] + blackRow[left + 2];
+                }
+                thresholdBlock(luminances, xoffset, yoffset, sum / 25, width);
+            }
+        }
+    }
+
+    private static int cap(int value, int min, int max) {
+        return value < min ? min : value > max ? max : value;
+    }
+
+    private void thresholdBlock(byte[] luminances, int xoffset, int yoffset, int threshold, int stride) {
+        for (int y = 0, offset = yoffset * stride + xoffset; y < BLOCK_SIZE; y++, offset += stride) {
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                if ((luminances[offset + x] & 0xFF) <= threshold) {
+                    matrix.set(xoffset + x, yoffset + y);
+                }
+            }
+        }
+    }
+
+    private void calculateBlackPoints(byte[] luminances, int width, int height) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int sum = 0;
+                int min = 0xFF;
+                int max = 0;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = luminances[offset + xx] & 0xFF;
+                        sum += pixel;
+                        if (pixel < min) {
+                            min = pixel;
+                        }
+                        if (pixel > max) {
+                            max = pixel;
+                        }
+                    }
+                    if (max - min > MIN_DYNAMIC_RANGE) {
+                        // Range is known to be wide enough, just finish the sum.
+                        for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+                            for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                                sum += luminances[offset + xx] & 0xFF;
+                            }
+                        }
+                    }
+                }
+
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+                if (max - min <= MIN_DYNAMIC_RANGE) {
+                    // Flat block: assume it is background unless the neighbours say otherwise.
+                    average = min / 2;
+                    if (y > 0 && x > 0) {
+                        int averageNeighborBlackPoint
+                                = (blackPoints[y - 1][x] + (2 * blackPoints[y][x - 1]) + blackPoints[y - 1][x - 1]) / 4;
+                        if (min < averageNeighborBlackPoint) {
+                            average = averageNeighborBlackPoint;
+                        }
+                    }
+                }
+                blackPoints[y][x] = average;
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package scan;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Staged QR scan pipeline: frame grabber, decoder pool, resolver and
+ * attendance writer, each on its own thread(s) and joined by bounded queues.
+ * A slow database round-trip in the resolver or writer therefore never
+ * stalls the camera; frames that pile up are dropped oldest-first.
+ *
+ * @param <V> the resolved visitor type handed from resolver to writer
+ * @author ASUS
+ */
+public class ScanPipeline<V> {
+
+    /**
+     * Decodes the QR text from a frame, or returns null when none is found.
+     * Each decoder thread gets its own instance, so implementations may keep
+     * non thread-safe state.
+     */
+    public interface FrameDecoder {
+
+        String decode(BufferedImage frame) throws Exception;
+    }
+
+    /**
+     * Turns a decoded payload into a visitor, or null if it is not valid.
+     */
+    public interface Resolver<V> {
+
+        V resolve(String payload) throws Exception;
+    }
+
+    /**
+     * Records attendance for a resolved visitor.
+     */
+    public interface Writer<V> {
+
+        void write(V visitor) throws Exception;
+    }
+
+    private static final long POLL_MILLIS = 200;
+
+    private final Supplier<BufferedImage> frameSource;
+    private final Supplier<FrameDecoder> decoderFactory;
+    private final Resolver<V> resolver;
+    private final Writer<V> writer;
+    private final int decoderThreads;
+    private final FrameSampler sampler;
+    private final long duplicateCooldownMillis;
+
+    private final DropOldestQueue<Frame> frames;
+    private final BlockingQueue<Scan<String>> payloads = new ArrayBlockingQueue<>(16);
+    private final BlockingQueue<Scan<V>> resolved = new ArrayBlockingQueue<>(16);
+    private final Map<String, Long> recentPayloads = new ConcurrentHashMap<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = false;
+
+    private final StageStats grabStats = new StageStats("grab");
+    private final StageStats decodeStats = new StageStats("decode");
+    private final StageStats resolveStats = new StageStats("resolve");
+    private final StageStats writeStats = new StageStats("write");
+    private final StageStats scanToConfirmStats = new StageStats("scanToConfirm");
+    private final AtomicLong framesCaptured = new AtomicLong();
+    private final AtomicLong framesDecoded = new AtomicLong();
+    private final AtomicLong framesMatched = new AtomicLong();
+
+    public ScanPipeline(Supplier<BufferedImage> frameSource, Supplier<FrameDecoder> decoderFactory,
+            Resolver<V> resolver, Writer<V> writer, int decoderThreads, FrameSampler sampler,
+            long duplicateCooldownMillis) {
+        this.frameSource = frameSource;
+        this.decoderFactory = decoderFactory;
+        this.resolver = resolver;
+        this.writer = writer;
+        this.decoderThreads = Math.max(1, decoderThreads);
+        this.sampler = sampler;
+        this.duplicateCooldownMillis = duplicateCooldownMillis;
+        this.frames = new DropOldestQueue<>(this.decoderThreads);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        threads.add(newThread("Scan Grabber", this::grabLoop));
+        for (int i = 0; i < decoderThreads; i++) {
+            FrameDecoder decoder = decoderFactory.get();
+            threads.add(newThread("Scan Decoder-" + i, () -> decodeLoop(decoder)));
+        }
+        threads.add(newThread("Scan Resolver", this::resolveLoop));
+        threads.add(newThread("Scan Writer", this::writeLoop));
+        for (Thread t : threads) {
+            t.start();
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        threads.clear();
+        frames.clear();
+        payloads.clear();
+        resolved.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private Thread newThread(String name, Runnable body) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private void grabLoop() {
+        while (running) {
+            long start = System.nanoTime();
+            try {
+                BufferedImage image = frameSource.get();
+                if (image != null) {
+                    grabStats.recordSince(start);
+                    framesCaptured.incrementAndGet();
+                    if (sampler.shouldDecode(image)) {
+                        frames.offer(new Frame(image, start));
+                    }
+                }
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            if (!sleepQuietly(sampler.nextIntervalMillis() - elapsedMillis)) {
+                return;
+            }
+        }
+    }
+
+    private void decodeLoop(FrameDecoder decoder) {
+        while (running) {
+            try {
+                Frame frame = frames.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                String text = decoder.decode(frame.image);
+                decodeStats.recordSince(start);
+                framesDecoded.incrementAndGet();
+                if (text != null) {
+                    framesMatched.incrementAndGet();
+                }
+                if (text != null && acceptPayload(text)) {
+                    if (!payloads.offer(new Scan<>(text, frame.capturedAt))) {
+                        // resolver is backed up, let a later frame retry this code
+                        recentPayloads.remove(text);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void resolveLoop() {
+        while (running) {
+            try {
+                Scan<String> scan = payloads.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (scan == null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                V visitor = resolver.resolve(scan.value);
+                resolveStats.recordSince(start);
+                if (visitor != null) {
+                    resolved.put(new Scan<>(visitor, scan.capturedAt));
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                Scan<V> scan = resolved.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (scan == null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                writer.write(scan.value);
+                writeStats.recordSince(start);
+                scanToConfirmStats.recordSince(scan.capturedAt);
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * The camera sees the same badge on many consecutive frames; only let
+     * it through once per cooldown window.
+     */
+    private boolean acceptPayload(String text) {
+        long now = System.currentTimeMillis();
+        if (recentPayloads.size() > 256) {
+            Iterator<Long> it = recentPayloads.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next() > duplicateCooldownMillis) {
+                    it.remove();
+                }
+            }
+        }
+        Long last = recentPayloads.get(text);
+        if (last != null && now - last < duplicateCooldownMillis) {
+            return false;
+        }
+        recentPayloads.put(text, now);
+        return true;
+    }
+
+    private boolean sleepQuietly(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException ex) {
+            return false;
+        }
+    }
+
+    public List<StageStats> getStageStats() {
+        List<StageStats> stats = new ArrayList<>();
+        stats.add(grabStats);
+        stats.add(decodeStats);
+        stats.add(resolveStats);
+        stats.add(writeStats);
+        stats.add(scanToConfirmStats);
+        return stats;
+    }
+
+    public long getDroppedFrameCount() {
+        return frames.getDroppedCount();
+    }
+
+    public long getFramesCaptured() {
+        return framesCaptured.get();
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded.get();
+    }
+
+    public long getFramesMatched() {
+        return framesMatched.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ScanPipeline" + getStageStats() + " frames[captured=" + getFramesCaptured() + ", decoded="
+                + getFramesDecoded() + ", matched=" + getFramesMatched() + ", dropped=" + getDroppedFrameCount() + "]";
+    }
+
+    private static class Frame {
+
+        final BufferedImage image;
+        final long capturedAt;
+
+        Frame(BufferedImage image, long capturedAt) {
+            this.image = image;
+            this.capturedAt = capturedAt;
+        }
+    }
+
+    private static class Scan<T> {
+
+        final T value;
+        final long capturedAt;
+
+        Scan(T value, long capturedAt) {
+            this.value = value;
+            this.capturedAt = capturedAt;
+        }
+    }
+}
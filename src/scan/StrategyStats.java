@@ -0,0 +1,44 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package scan;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decode time and hit rate for one decode strategy, shared by all decoder
+ * threads.
+ *
+ * @author ASUS
+ */
+public class StrategyStats extends StageStats {
+
+    private final AtomicLong hits = new AtomicLong();
+
+    public StrategyStats(String name) {
+        super(name);
+    }
+
+    public void record(long nanos, boolean hit) {
+        record(nanos);
+        if (hit) {
+            hits.incrementAndGet();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public double getHitRate() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) hits.get() / n;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[attempts=%d, hits=%d (%.1f%%), avg=%.2fms, max=%.2fms]", getName(), getCount(),
+                getHits(), getHitRate() * 100, getAverageMillis(), getMaxMillis());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Whole-file writes that a reader never sees half done: the data goes to
+ * a temporary file next to the target, named after it, which is then
+ * renamed into place.
+ *
+ * @author ASUS
+ */
+public class AtomicFiles {
+
+    public static void write(File target, byte[] data) throws IOException {
+        write(target, data, false);
+    }
+
+    /**
+     * As {@link #write(File, byte[])}, and with {@code sync} the data is on
+     * disk before the rename, so after a crash the target is either the
+     * old file or the whole new one.
+     */
+    public static void write(File target, byte[] data, boolean sync) throws IOException {
+        Path dir = target.getAbsoluteFile().getParentFile().toPath();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "." + target.getName(), ".tmp");
+        try {
+            if (sync) {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                }
+            } else {
+                Files.write(temp, data);
+            }
+            try {
+                Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
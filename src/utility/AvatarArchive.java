@@ -0,0 +1,498 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * A kiosk's own copy of every visitor's avatar, packed into one file on
+ * its local disk and read through MappedByteBuffers. MarkVisit finds and
+ * decodes an archived avatar without a system call or a trip to the share,
+ * and keeps showing photos while the share is away.
+ *
+ * The file is a header, the avatar JPEGs one after another, and an index
+ * of (visitor id, offset, length, content hash) sorted by id; the header
+ * points at the index. A background sync compares the index with the
+ * {@link PhotoStore} manifest every vms.avatar.archiveSyncMillis (60 s).
+ * A visitor who is not archived stays a miss until then, which costs one
+ * binary search; most misses are visitors with no photo at all, and
+ * {@link AvatarCache} reads a new photo from the store meanwhile. An entry
+ * can be evicted when the visitor's photo changes; it is a miss until
+ * the next sync archives the new photo. New and changed avatars are appended with
+ * a new index after them, then the header is pointed at it; readers keep
+ * the mapping they have until the new one is loaded, and the file only
+ * grows. When more than half of it is dead the live avatars are copied to
+ * the next generation of the file instead. The archive is only a copy of
+ * the store, so one that cannot be read is rebuilt from it.
+ *
+ * Off unless vms.avatar.archiveDir names a directory on the kiosk's disk.
+ *
+ * @author ASUS
+ */
+public class AvatarArchive {
+
+    private static final String DIR = System.getProperty("vms.avatar.archiveDir");
+    private static final long SYNC_MILLIS = Long.getLong("vms.avatar.archiveSyncMillis", 60_000L);
+
+    private static final long MAGIC = 0x564D534156504B31L; // "VMSAVPK1"
+    private static final int HEADER_BYTES = 24;
+    private static final int HASH_BYTES = 16;
+    private static final int ENTRY_BYTES = 16 + HASH_BYTES;
+    /** Avatars are ~20 KB; anything this large is not one. */
+    private static final int MAX_AVATAR_BYTES = 1 << 20;
+    /** Each mapping covers one window plus MAX_AVATAR_BYTES, so every avatar lies inside one mapping. */
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private static final AvatarArchive INSTANCE = new AvatarArchive(DIR == null ? null : new File(DIR), PhotoStore.getInstance());
+
+    /**
+     * An archived avatar. {@code version} changes whenever the picture does.
+     */
+    public static class Packed {
+
+        public final String version;
+        private final ByteBuffer data;
+
+        Packed(String version, ByteBuffer data) {
+            this.version = version;
+            this.data = data;
+        }
+
+        /**
+         * Decodes the avatar from the mapped file, entirely in memory.
+         */
+        public BufferedImage read() throws IOException {
+            ImageReader reader = ImageIO.getImageReadersByFormatName("jpeg").next();
+            try (MemoryCacheImageInputStream in = new MemoryCacheImageInputStream(new BufferInputStream(data.duplicate()))) {
+                reader.setInput(in, true, true);
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+
+    /**
+     * An index entry while a new index is being written; {@code file} is
+     * set for avatars still to be copied from the store.
+     */
+    private static class Entry {
+
+        final int id;
+        final byte[] hash;
+        final File file;
+        long offset;
+        int length;
+
+        Entry(int id, byte[] hash, File file, long offset, int length) {
+            this.id = id;
+            this.hash = hash;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * One loaded generation of the file. Never changed once loaded.
+     */
+    private static class Snapshot {
+
+        final File file;
+        final int generation;
+        final long size;
+        final ByteBuffer[] windows;
+        final int[] ids;
+        final long[] offsets;
+        final int[] lengths;
+        final byte[] hashes;
+        final long liveBytes;
+
+        Snapshot(File file, int generation, long size, ByteBuffer[] windows, int[] ids, long[] offsets, int[] lengths, byte[] hashes) {
+            this.file = file;
+            this.generation = generation;
+            this.size = size;
+            this.windows = windows;
+            this.ids = ids;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.hashes = hashes;
+            long live = 0;
+            for (int length : lengths) {
+                live += length;
+            }
+            this.liveBytes = live;
+        }
+
+        int indexOf(int id) {
+            return Arrays.binarySearch(ids, id);
+        }
+
+        boolean hashEquals(int i, byte[] hash) {
+            return Arrays.equals(hashes, i * HASH_BYTES, (i + 1) * HASH_BYTES, hash, 0, HASH_BYTES);
+        }
+
+        ByteBuffer data(int i) {
+            ByteBuffer window = windows[(int) (offsets[i] / WINDOW_BYTES)].duplicate();
+            int position = (int) (offsets[i] % WINDOW_BYTES);
+            window.limit(position + lengths[i]).position(position);
+            return window.slice();
+        }
+
+        long deadBytes() {
+            return size - HEADER_BYTES - liveBytes - (long) ids.length * ENTRY_BYTES;
+        }
+    }
+
+    private final File dir;
+    private final PhotoStore store;
+    private volatile Snapshot snapshot = null;
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "AvatarArchive Sync");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private final AtomicBoolean started = new AtomicBoolean();
+    /** Visitors whose archived avatar is out of date until the next sync. */
+    private final Set<Integer> evicted = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong failedSyncs = new AtomicLong();
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private volatile long lastSyncMillis = 0;
+
+    public static AvatarArchive getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param dir where the archive is kept, or null for no archive
+     */
+    public AvatarArchive(File dir, PhotoStore store) {
+        this.dir = dir;
+        this.store = store;
+    }
+
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    /**
+     * Loads the archive and starts syncing it in the background. Does
+     * nothing if it is off or already started.
+     */
+    public void start() {
+        if (isEnabled() && started.compareAndSet(false, true)) {
+            syncer.scheduleWithFixedDelay(this::sync, 0, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The visitor's archived avatar, or null if it is not archived (yet)
+     * or was evicted since the last sync. Touches only memory.
+     */
+    public Packed find(int visitorId) {
+        Snapshot s = snapshot;
+        int i = s == null || (!evicted.isEmpty() && evicted.contains(visitorId)) ? -1 : s.indexOf(visitorId);
+        if (i < 0) {
+            if (isEnabled()) {
+                misses.incrementAndGet();
+            }
+            return null;
+        }
+        hits.incrementAndGet();
+        return new Packed(s.generation + ":" + s.offsets[i], s.data(i));
+    }
+
+    /**
+     * Stops serving the visitor's archived avatar, e.g. because their photo
+     * was replaced, until the next sync has compared it with the store.
+     */
+    public void evict(int visitorId) {
+        if (isEnabled()) {
+            evicted.add(visitorId);
+        }
+    }
+
+    /**
+     * Brings the archive up to date with the store. Runs on the sync
+     * thread only. If the share is away the archive is left as it is.
+     */
+    void sync() {
+        long start = System.nanoTime();
+        // Evictions from now on may be newer than what this sync reads from the store.
+        List<Integer> syncing = new ArrayList<>(evicted);
+        try {
+            if (snapshot == null) {
+                snapshot = openLatest();
+            }
+            Snapshot base = snapshot;
+            List<Entry> kept = new ArrayList<>();
+            List<Entry> added = new ArrayList<>();
+            store.forEachAvatar((id, hash, file) -> {
+                int i = base.indexOf(id);
+                if (i >= 0 && base.hashEquals(i, hash)) {
+                    kept.add(new Entry(id, hash, null, base.offsets[i], base.lengths[i]));
+                } else {
+                    added.add(new Entry(id, hash, file, 0, 0));
+                }
+            });
+            if (added.isEmpty() && kept.size() == base.ids.length) {
+                evicted.removeAll(syncing);
+                return;
+            }
+            snapshot = write(base, kept, added);
+            evicted.removeAll(syncing);
+            syncs.incrementAndGet();
+        } catch (Exception ex) {
+            failedSyncs.incrementAndGet();
+            ex.printStackTrace();
+        } finally {
+            lastSyncMillis = (System.nanoTime() - start) / 1_000_000;
+        }
+    }
+
+    /**
+     * Appends the added avatars and a new index to the current file, or
+     * copies everything to the next generation when the current one is
+     * mostly dead, and loads the result.
+     */
+    private Snapshot write(Snapshot base, List<Entry> kept, List<Entry> added) throws IOException {
+        long keptBytes = 0;
+        for (Entry entry : kept) {
+            keptBytes += entry.length;
+        }
+        // After an append everything but the kept avatars is dead, the old index included.
+        boolean compact = base.file == null || base.size - HEADER_BYTES - keptBytes > keptBytes;
+        int generation = compact ? base.generation + 1 : base.generation;
+        File target = compact ? fileFor(generation) : base.file;
+        if (compact) {
+            Files.deleteIfExists(target.toPath());
+        }
+        Files.createDirectories(dir.toPath());
+        List<Entry> entries = new ArrayList<>(kept.size() + added.size());
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = compact ? HEADER_BYTES : channel.size();
+            if (compact) {
+                // An empty header until the index is written.
+                writeFully(channel, ByteBuffer.allocate(HEADER_BYTES), 0);
+                for (Entry entry : kept) {
+                    ByteBuffer data = base.data(base.indexOf(entry.id));
+                    entry.offset = position;
+                    position += writeFully(channel, data, position);
+                }
+            }
+            entries.addAll(kept);
+            for (Entry entry : added) {
+                byte[] bytes;
+                try {
+                    bytes = Files.readAllBytes(entry.file.toPath());
+                } catch (IOException ex) {
+                    // Left out for now; the next sync tries again.
+                    ex.printStackTrace();
+                    continue;
+                }
+                if (bytes.length == 0 || bytes.length > MAX_AVATAR_BYTES) {
+                    continue;
+                }
+                entry.offset = position;
+                entry.length = bytes.length;
+                position += writeFully(channel, ByteBuffer.wrap(bytes), position);
+                entries.add(entry);
+                copied.incrementAndGet();
+            }
+            entries.sort(Comparator.comparingInt(e -> e.id));
+
+            ByteBuffer index = ByteBuffer.allocate(entries.size() * ENTRY_BYTES);
+            for (Entry entry : entries) {
+                index.putInt(entry.id).putLong(entry.offset).putInt(entry.length).put(entry.hash);
+            }
+            index.flip();
+            CRC32 crc = new CRC32();
+            crc.update(index.duplicate());
+            long indexOffset = position;
+            writeFully(channel, index, indexOffset);
+            channel.force(false);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putLong(MAGIC).putLong(indexOffset).putInt(entries.size()).putInt((int) crc.getValue()).flip();
+            writeFully(channel, header, 0);
+            channel.force(false);
+        }
+        Snapshot loaded = load(target, generation);
+        if (compact) {
+            compactions.incrementAndGet();
+            deleteOlderThan(generation);
+        }
+        return loaded;
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        long written = 0;
+        while (data.hasRemaining()) {
+            written += channel.write(data, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * The newest generation that loads, or an empty archive if there is
+     * none.
+     */
+    private Snapshot openLatest() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("avatars-") && name.endsWith(".pack"));
+        int newest = -1;
+        for (File file : files == null ? new File[0] : files) {
+            newest = Math.max(newest, generationOf(file));
+        }
+        if (newest >= 0) {
+            try {
+                Snapshot loaded = load(fileFor(newest), newest);
+                deleteOlderThan(newest);
+                return loaded;
+            } catch (IOException ex) {
+                // Rebuilt from the store by the first sync.
+                ex.printStackTrace();
+            }
+        }
+        return new Snapshot(null, Math.max(newest, 0), 0, new ByteBuffer[0], new int[0], new long[0], new int[0], new byte[0]);
+    }
+
+    private static Snapshot load(File file, int generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getLong() != MAGIC) {
+                throw new IOException("Not an avatar archive: " + file);
+            }
+            long indexOffset = header.getLong();
+            int count = header.getInt();
+            int checksum = header.getInt();
+            if (count < 0 || indexOffset < HEADER_BYTES || indexOffset + (long) count * ENTRY_BYTES > size) {
+                throw new IOException("Damaged avatar archive: " + file);
+            }
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) count * ENTRY_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(index.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Damaged avatar archive index: " + file);
+            }
+            int[] ids = new int[count];
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            byte[] hashes = new byte[count * HASH_BYTES];
+            for (int i = 0; i < count; i++) {
+                ids[i] = index.getInt();
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                index.get(hashes, i * HASH_BYTES, HASH_BYTES);
+                if (offsets[i] < HEADER_BYTES || lengths[i] > MAX_AVATAR_BYTES || offsets[i] + lengths[i] > indexOffset) {
+                    throw new IOException("Damaged avatar archive entry " + ids[i] + ": " + file);
+                }
+            }
+            ByteBuffer[] windows = new ByteBuffer[(int) ((indexOffset + WINDOW_BYTES - 1) / WINDOW_BYTES)];
+            for (int w = 0; w < windows.length; w++) {
+                long from = w * WINDOW_BYTES;
+                windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(indexOffset, from + WINDOW_BYTES + MAX_AVATAR_BYTES) - from);
+            }
+            return new Snapshot(file, generation, size, windows, ids, offsets, lengths, hashes);
+        }
+    }
+
+    /**
+     * Deletes older generations. On Windows one that is still mapped
+     * cannot be deleted; it goes the next time the archive is opened.
+     */
+    private void deleteOlderThan(int generation) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("avatars-") && name.endsWith(".pack"));
+        for (File file : files == null ? new File[0] : files) {
+            if (generationOf(file) < generation) {
+                file.delete();
+            }
+        }
+    }
+
+    private File fileFor(int generation) {
+        return new File(dir, "avatars-" + generation + ".pack");
+    }
+
+    private static int generationOf(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring("avatars-".length(), name.length() - ".pack".length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    public int size() {
+        Snapshot s = snapshot;
+        return s == null ? 0 : s.ids.length;
+    }
+
+    @Override
+    public String toString() {
+        Snapshot s = snapshot;
+        return String.format("AvatarArchive[avatars=%d, fileBytes=%d, deadBytes=%d, evicted=%d, hits=%d, misses=%d, syncs=%d, failedSyncs=%d, copied=%d, compactions=%d, lastSyncMillis=%d]",
+                size(), s == null ? 0 : s.size, s == null || s.file == null ? 0 : s.deadBytes(), evicted.size(), hits.get(), misses.get(),
+                syncs.get(), failedSyncs.get(), copied.get(), compactions.get(), lastSyncMillis);
+    }
+}
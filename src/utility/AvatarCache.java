@@ -0,0 +1,213 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import dao.Visitor;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * Ready-to-paint circular avatars for the MarkVisit confirmation screen,
+ * keyed by visitor email. The cache is bounded by the pixel bytes it holds
+ * rather than by entry count. An entry is dropped when the visitor's photo
+ * has changed, or via {@link #invalidate(Visitor)}.
+ *
+ * @author ASUS
+ */
+public class AvatarCache {
+
+    public static final int DIAMETER = 285;
+
+    private static final long MAX_BYTES = Long.getLong("vms.avatar.cacheBytes", 64L * 1024 * 1024);
+
+    private static final AvatarCache INSTANCE = new AvatarCache(MAX_BYTES);
+
+    /**
+     * A rendered avatar; {@code fromPhoto} is false for the initial-letter
+     * fallback.
+     */
+    public static class Avatar {
+
+        public final BufferedImage image;
+        public final boolean fromPhoto;
+        /** What it was rendered from; see {@link AvatarCache#get(Visitor)}. */
+        final String version;
+
+        Avatar(BufferedImage image, boolean fromPhoto, String version) {
+            this.image = image;
+            this.fromPhoto = fromPhoto;
+            this.version = version;
+        }
+
+        long bytes() {
+            return (long) image.getWidth() * image.getHeight() * 4;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Avatar> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Character, BufferedImage> initials = new LinkedHashMap<>();
+    private long currentBytes = 0;
+    private final ExecutorService warmer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "AvatarCache Warmer");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public static AvatarCache getInstance() {
+        return INSTANCE;
+    }
+
+    public AvatarCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the avatar for a visitor, rendering and caching it on a miss.
+     * An avatar in the kiosk's {@link AvatarArchive} is checked and decoded
+     * without leaving memory; otherwise the photo file is checked on every
+     * call by its path, modification time and size.
+     */
+    public Avatar get(Visitor visitor) {
+        String email = visitor.getEmail();
+        AvatarArchive.Packed packed = AvatarArchive.getInstance().find(visitor.getId());
+        File photo = null;
+        String version;
+        if (packed != null) {
+            version = packed.version;
+        } else {
+            photo = PhotoStore.getInstance().avatarOf(visitor);
+            version = photo == null ? "" : photo.getPath() + '@' + photo.lastModified() + '/' + photo.length();
+        }
+
+        synchronized (this) {
+            Avatar cached = entries.get(email);
+            if (cached != null && cached.version.equals(version)) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        Avatar avatar = null;
+        if (packed != null || photo != null) {
+            try {
+                BufferedImage image = packed != null ? packed.read() : ImageIO.read(photo);
+                if (image != null) {
+                    avatar = new Avatar(createCircularImage(image), true, version);
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+        if (avatar == null) {
+            avatar = new Avatar(initialAvatar(visitor.getName()), false, version);
+        }
+
+        synchronized (this) {
+            Avatar previous = entries.put(email, avatar);
+            if (previous != null) {
+                currentBytes -= previous.fromPhoto ? previous.bytes() : 0;
+            }
+            // Initial-letter images are shared and accounted for once in initials.
+            currentBytes += avatar.fromPhoto ? avatar.bytes() : 0;
+            evictToBudget();
+        }
+        return avatar;
+    }
+
+    /**
+     * Renders avatars for the given visitors on a low priority background
+     * thread so their first scan is already a cache hit.
+     */
+    public void warmAsync(Collection<Visitor> visitors) {
+        warmer.execute(() -> {
+            for (Visitor visitor : visitors) {
+                get(visitor);
+            }
+        });
+    }
+
+    /**
+     * Drops the visitor's avatar, here and in the {@link AvatarArchive},
+     * so their next scan shows the photo now in the store.
+     */
+    public void invalidate(Visitor visitor) {
+        AvatarArchive.getInstance().evict(visitor.getId());
+        synchronized (this) {
+            Avatar previous = entries.remove(visitor.getEmail());
+            if (previous != null && previous.fromPhoto) {
+                currentBytes -= previous.bytes();
+            }
+        }
+    }
+
+    private void evictToBudget() {
+        Iterator<Avatar> it = entries.values().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Avatar eldest = it.next();
+            it.remove();
+            if (eldest.fromPhoto) {
+                currentBytes -= eldest.bytes();
+            }
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized BufferedImage initialAvatar(String name) {
+        char initial = name == null || name.isEmpty() ? '?' : Character.toUpperCase(name.charAt(0));
+        BufferedImage image = initials.get(initial);
+        if (image == null) {
+            image = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = image.createGraphics();
+
+            g2d.setColor(Color.BLACK);
+            g2d.fillOval(25, 25, 250, 250);
+
+            g2d.setFont(new Font("Serif", Font.BOLD, 250));
+            g2d.setColor(Color.WHITE);
+            g2d.drawString(String.valueOf(initial), 75, 225);
+            g2d.dispose();
+            initials.put(initial, image);
+        }
+        return image;
+    }
+
+    public static BufferedImage createCircularImage(BufferedImage image) {
+        BufferedImage circularImage = new BufferedImage(DIAMETER, DIAMETER, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = circularImage.createGraphics();
+        g2.setClip(new Ellipse2D.Double(0, 0, DIAMETER, DIAMETER));
+        g2.drawImage(ImageResampler.resize(image, DIAMETER, DIAMETER), 0, 0, null);
+        g2.dispose();
+        return circularImage;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("AvatarCache[entries=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), currentBytes, maxBytes, hits.get(), misses.get(), evictions.get());
+    }
+}
@@ -7,10 +7,8 @@ package utility;
 import forms.Dashboard;
 import forms.UserRegistration;
 import java.awt.BorderLayout;
-import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.util.HashMap;
-import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -24,9 +22,7 @@ public class BDUtility {
     public static void setImage(JFrame frame, String imagePath, int newWidth, int newHeight) {
 
         try {
-            BufferedImage originalImage = ImageIO.read(BDUtility.class.getResourceAsStream(imagePath));
-            BufferedImage resizedImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
-            resizedImage.createGraphics().drawImage(originalImage.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH), 0, 0, null);
+            BufferedImage resizedImage = WallpaperCache.getInstance().get(imagePath, newWidth, newHeight);
             ImageIcon backgroundImage = new ImageIcon(resizedImage);
             JLabel backgroundLabel = new JLabel(backgroundImage);
             backgroundLabel.setBounds(0, 0, newWidth, newHeight);
@@ -62,12 +58,17 @@ public class BDUtility {
         return "";
     }
 
-    public static BufferedImage scaleImage(BufferedImage originalImage, BufferedImage selectedImage) {
-        int width = selectedImage.getWidth();
-        int height = selectedImage.getHeight();
-        BufferedImage scaledImage = new BufferedImage(width, height, originalImage.getType());
-        scaledImage.createGraphics().drawImage(originalImage.getScaledInstance(width, height, Image.SCALE_SMOOTH), 0, 0, null);
-        return scaledImage;
+    private static final boolean PRINT_STATS = Boolean.getBoolean("vms.stats");
+
+    /**
+     * Prints each stats object on its own line if vms.stats is set.
+     */
+    public static void printStats(Object... stats) {
+        if (PRINT_STATS) {
+            for (Object stat : stats) {
+                System.out.println(stat);
+            }
+        }
     }
 
     public static void openForm(String simpleName, UserRegistration userRegistration, Dashboard aThis) {
@@ -0,0 +1,266 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import dao.BadgeKeys;
+import dao.Visitor;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What a badge QR code contains. Badges are issued signed:
+ *
+ * <pre>VMS2:&lt;id&gt;:&lt;key id&gt;:&lt;signature&gt;</pre>
+ *
+ * with the ids in base 36 and the signature the first 80 bits of an
+ * HMAC-SHA256 (see {@link BadgeKeys}) over the id, the key id and the
+ * visitor's unique registration id, in upper-case hex. The registration id
+ * is not printed, so a badge cannot be made from what is on another badge,
+ * and re-registering a visitor invalidates their old badges. Every
+ * character is in the QR alphanumeric set, so a badge fits in a version 2
+ * code.
+ *
+ * Unsigned badges, the compact VMS1:&lt;id&gt;:&lt;token&gt; form and the
+ * original JSON map, are still parsed but only accepted when
+ * vms.badge.acceptUnsigned is set, for the time it takes to reissue them.
+ * Setting vms.badge.legacyJson issues JSON badges for sites where older
+ * kiosks are still scanning.
+ *
+ * @author ASUS
+ */
+public class BadgePayload {
+
+    public static final String SIGNED_PREFIX = "VMS2:";
+    public static final String COMPACT_PREFIX = "VMS1:";
+    static final int TOKEN_LENGTH = 10;
+    static final int SIGNATURE_BYTES = 10;
+
+    private static final boolean LEGACY_JSON = Boolean.getBoolean("vms.badge.legacyJson");
+    private static final boolean ACCEPT_UNSIGNED = Boolean.getBoolean("vms.badge.acceptUnsigned");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final Gson GSON = new Gson();
+    private static final Type LEGACY_TYPE = new TypeToken<Map<String, String>>() {
+    }.getType();
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    public enum Format {
+        SIGNED, COMPACT, JSON
+    }
+
+    /**
+     * A parsed badge. Signed badges carry an id, key id and signature;
+     * compact ones an id and token; JSON ones are looked up by email.
+     */
+    public static class Badge {
+
+        public final Format format;
+        public final int id;
+        public final String email;
+        final String token;
+        final int kid;
+        final byte[] signature;
+
+        Badge(Format format, int id, String email, String token, int kid, byte[] signature) {
+            this.format = format;
+            this.id = id;
+            this.email = email;
+            this.token = token;
+            this.kid = kid;
+            this.signature = signature;
+        }
+
+        public boolean isLegacy() {
+            return format == Format.JSON;
+        }
+
+        /**
+         * Whether this badge was issued to the given visitor and is
+         * accepted at this kiosk.
+         */
+        public boolean verify(Visitor visitor) throws SQLException {
+            switch (format) {
+                case SIGNED:
+                    return id == visitor.getId()
+                            && BadgeKeys.getInstance().verify(kid, signedMessage(id, kid, visitor.getUniqueRegId()), signature);
+                case COMPACT:
+                    return ACCEPT_UNSIGNED && id == visitor.getId() && token.equals(token(visitor.getUniqueRegId()));
+                default:
+                    return ACCEPT_UNSIGNED && email.equals(visitor.getEmail());
+            }
+        }
+    }
+
+    public static String encode(Visitor visitor) throws SQLException {
+        return encode(visitor, signingKeyId());
+    }
+
+    /**
+     * The key id to give {@link #encode(Visitor, int)}: the current signing
+     * key's, or 0 when badges are written as unsigned JSON.
+     */
+    public static int signingKeyId() throws SQLException {
+        return LEGACY_JSON ? 0 : BadgeKeys.getInstance().signingKeyId();
+    }
+
+    /**
+     * The payload signed with key {@code kid}, for callers encoding many
+     * badges with the same key.
+     */
+    public static String encode(Visitor visitor, int kid) throws SQLException {
+        if (LEGACY_JSON) {
+            Map<String, String> data = new HashMap<>();
+            data.put("id", String.valueOf(visitor.getId()));
+            data.put("name", visitor.getName());
+            data.put("email", visitor.getEmail());
+            data.put("registrationId", visitor.getUniqueRegId());
+            return GSON.toJson(data);
+        }
+        byte[] mac = BadgeKeys.getInstance().sign(kid, signedMessage(visitor.getId(), kid, visitor.getUniqueRegId()));
+        StringBuilder payload = new StringBuilder(40).append(SIGNED_PREFIX)
+                .append(Integer.toString(visitor.getId(), 36).toUpperCase()).append(':')
+                .append(Integer.toString(kid, 36).toUpperCase()).append(':');
+        for (int i = 0; i < SIGNATURE_BYTES; i++) {
+            payload.append(HEX[(mac[i] >> 4) & 0xf]).append(HEX[mac[i] & 0xf]);
+        }
+        return payload.toString();
+    }
+
+    /**
+     * Parses a scanned badge, or returns null if it is not one of ours.
+     */
+    public static Badge parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (text.startsWith(SIGNED_PREFIX)) {
+            return parseSigned(text);
+        }
+        if (text.startsWith(COMPACT_PREFIX)) {
+            return parseCompact(text);
+        }
+        if (text.startsWith("{")) {
+            return parseLegacy(text);
+        }
+        return null;
+    }
+
+    private static Badge parseSigned(String text) {
+        int length = text.length();
+        int idEnd = base36End(text, SIGNED_PREFIX.length());
+        if (idEnd < 0 || text.charAt(idEnd) != ':') {
+            return null;
+        }
+        int kidEnd = base36End(text, idEnd + 1);
+        if (kidEnd < 0 || text.charAt(kidEnd) != ':' || length - kidEnd - 1 != SIGNATURE_BYTES * 2) {
+            return null;
+        }
+        long id = base36(text, SIGNED_PREFIX.length(), idEnd);
+        long kid = base36(text, idEnd + 1, kidEnd);
+        if (id < 0 || kid < 0) {
+            return null;
+        }
+        byte[] signature = new byte[SIGNATURE_BYTES];
+        for (int i = 0, p = kidEnd + 1; i < SIGNATURE_BYTES; i++, p += 2) {
+            int high = Character.digit(text.charAt(p), 16);
+            int low = Character.digit(text.charAt(p + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            signature[i] = (byte) ((high << 4) | low);
+        }
+        return new Badge(Format.SIGNED, (int) id, null, null, (int) kid, signature);
+    }
+
+    private static Badge parseCompact(String text) {
+        int length = text.length();
+        int idEnd = base36End(text, COMPACT_PREFIX.length());
+        if (idEnd < 0 || text.charAt(idEnd) != ':' || length - idEnd - 1 != TOKEN_LENGTH) {
+            return null;
+        }
+        long id = base36(text, COMPACT_PREFIX.length(), idEnd);
+        if (id < 0 || base36End(text, idEnd + 1) != -1) {
+            return null;
+        }
+        return new Badge(Format.COMPACT, (int) id, null, text.substring(idEnd + 1), 0, null);
+    }
+
+    private static Badge parseLegacy(String text) {
+        try {
+            Map<String, String> map = GSON.fromJson(text, LEGACY_TYPE);
+            if (map == null || map.get("email") == null) {
+                return null;
+            }
+            int id;
+            try {
+                id = Integer.parseInt(map.get("id"));
+            } catch (NumberFormatException ex) {
+                id = -1;
+            }
+            return new Badge(Format.JSON, id, map.get("email"), null, 0, null);
+        } catch (JsonSyntaxException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Index of the first character after a non-empty run of base 36 digits
+     * starting at {@code from}: -1 if the run is empty or reaches the end of
+     * the text.
+     */
+    private static int base36End(String text, int from) {
+        int i = from;
+        while (i < text.length() && Character.digit(text.charAt(i), 36) >= 0) {
+            i++;
+        }
+        return i == from || i == text.length() ? -1 : i;
+    }
+
+    /**
+     * Value of the base 36 digits in [from, to), or -1 if it does not fit
+     * in an int.
+     */
+    private static long base36(String text, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 36 + Character.digit(text.charAt(i), 36);
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return value;
+    }
+
+    private static String signedMessage(int id, int kid, String uniqueRegId) {
+        return SIGNED_PREFIX + id + ':' + kid + ':' + (uniqueRegId == null ? "" : uniqueRegId);
+    }
+
+    static String token(String uniqueRegId) {
+        MessageDigest sha = SHA256.get();
+        byte[] hash = sha.digest((uniqueRegId == null ? "" : uniqueRegId).getBytes(StandardCharsets.UTF_8));
+        long bits = 0;
+        for (int i = 0; i < 6; i++) {
+            bits = (bits << 8) | (hash[i] & 0xff);
+        }
+        StringBuilder token = new StringBuilder(Long.toString(bits, 36).toUpperCase());
+        while (token.length() < TOKEN_LENGTH) {
+            token.insert(0, '0');
+        }
+        return token.toString();
+    }
+}
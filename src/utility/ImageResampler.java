@@ -0,0 +1,127 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Resizes images for display and for saving. Shrinking is done in steps of
+ * at most half the size each, which looks close to
+ * getScaledInstance(SCALE_SMOOTH) at a fraction of the time; a single
+ * bilinear step from a large photo would skip most of its pixels and
+ * alias. Exact halvings average 2x2 blocks of int pixels directly, the
+ * last step is a bilinear draw. Results are TYPE_INT_RGB, or TYPE_INT_ARGB
+ * for images with transparency, which Swing paints without converting.
+ *
+ * @author ASUS
+ */
+public class ImageResampler {
+
+    private ImageResampler() {
+    }
+
+    public static BufferedImage resize(BufferedImage source, int width, int height) {
+        return resize(source, width, height, displayType(source));
+    }
+
+    /**
+     * Resizes to exactly {@code width} x {@code height} as an image of the
+     * given type.
+     */
+    public static BufferedImage resize(BufferedImage source, int width, int height, int type) {
+        int stepType = displayType(source);
+        BufferedImage current = source;
+        if (source.getWidth() >= 4 * width && source.getHeight() >= 4 * height) {
+            current = convert(source, stepType);
+            while (current.getWidth() >= 4 * width && current.getHeight() >= 4 * height) {
+                current = halve(current);
+            }
+        }
+        int w = current.getWidth();
+        int h = current.getHeight();
+        do {
+            w = w > width ? Math.max(width, w / 2) : width;
+            h = h > height ? Math.max(height, h / 2) : height;
+            boolean last = w == width && h == height;
+            BufferedImage next = new BufferedImage(w, h, last ? type : stepType);
+            Graphics2D g2 = next.createGraphics();
+            g2.setComposite(AlphaComposite.Src);
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            g2.drawImage(current, 0, 0, w, h, null);
+            g2.dispose();
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    /**
+     * Resizes to fit inside {@code maxWidth} x {@code maxHeight}, keeping
+     * the aspect ratio.
+     */
+    public static BufferedImage fit(BufferedImage source, int maxWidth, int maxHeight) {
+        double scale = Math.min((double) maxWidth / source.getWidth(), (double) maxHeight / source.getHeight());
+        int width = Math.max(1, (int) (source.getWidth() * scale));
+        int height = Math.max(1, (int) (source.getHeight() * scale));
+        return resize(source, width, height);
+    }
+
+    /**
+     * The type to save a resized copy of {@code source} as: its own type
+     * when it is a standard one, so e.g. a JPEG stays writable as JPEG.
+     */
+    public static int saveType(BufferedImage source) {
+        return source.getType() == BufferedImage.TYPE_CUSTOM ? displayType(source) : source.getType();
+    }
+
+    private static BufferedImage convert(BufferedImage source, int type) {
+        // halve() reads the pixel array directly, which a subimage shares with its parent.
+        if (source.getType() == type && source.getRaster().getParent() == null) {
+            return source;
+        }
+        BufferedImage converted = new BufferedImage(source.getWidth(), source.getHeight(), type);
+        Graphics2D g2 = converted.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.drawImage(source, 0, 0, null);
+        g2.dispose();
+        return converted;
+    }
+
+    /**
+     * Averages each 2x2 block of an INT_RGB or INT_ARGB image, two channels
+     * at a time.
+     */
+    private static BufferedImage halve(BufferedImage source) {
+        int sourceWidth = source.getWidth();
+        int width = sourceWidth / 2;
+        int height = source.getHeight() / 2;
+        BufferedImage half = new BufferedImage(width, height, source.getType());
+        int[] in = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+        int[] out = ((DataBufferInt) half.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < height; y++) {
+            int top = 2 * y * sourceWidth;
+            int bottom = top + sourceWidth;
+            int o = y * width;
+            for (int x = 0; x < width; x++, top += 2, bottom += 2) {
+                int a = in[top];
+                int b = in[top + 1];
+                int c = in[bottom];
+                int d = in[bottom + 1];
+                int rb = (a & 0xff00ff) + (b & 0xff00ff) + (c & 0xff00ff) + (d & 0xff00ff) + 0x20002;
+                int ag = ((a >>> 8) & 0xff00ff) + ((b >>> 8) & 0xff00ff) + ((c >>> 8) & 0xff00ff) + ((d >>> 8) & 0xff00ff) + 0x20002;
+                out[o + x] = ((ag << 6) & 0xff00ff00) | ((rb >>> 2) & 0xff00ff);
+            }
+        }
+        return half;
+    }
+
+    private static int displayType(BufferedImage source) {
+        return source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+}
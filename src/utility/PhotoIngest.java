@@ -0,0 +1,276 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Turns a chosen photo into what is stored for a visitor. The photo is
+ * decoded once, turned upright from its EXIF orientation and shrunk to
+ * vms.photo.maxEdge (1024) pixels on its longer side. Two JPEGs are kept
+ * in {@link PhotoStore} at vms.photo.jpegQuality (0.85): the master, and a
+ * square AvatarCache.DIAMETER crop that MarkVisit reads instead of it.
+ *
+ * @author ASUS
+ */
+public class PhotoIngest {
+
+    public static final int MAX_EDGE = Integer.getInteger("vms.photo.maxEdge", 1024);
+
+    private static final float JPEG_QUALITY = Float.parseFloat(System.getProperty("vms.photo.jpegQuality", "0.85"));
+    private static final int EXIF_ORIENTATION = 0x0112;
+
+    private static final PhotoIngest INSTANCE = new PhotoIngest();
+
+    /**
+     * A decoded photo, upright and no larger than {@link #MAX_EDGE}.
+     */
+    public static class Photo {
+
+        public final BufferedImage image;
+        public final long sourceBytes;
+        /** The file itself, when it is a JPEG that needed no changes. */
+        final byte[] original;
+
+        Photo(BufferedImage image, long sourceBytes, byte[] original) {
+            this.image = image;
+            this.sourceBytes = sourceBytes;
+            this.original = original;
+        }
+    }
+
+    private final AtomicLong photos = new AtomicLong();
+    private final AtomicLong sourceBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    public static PhotoIngest getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Decodes and normalizes a photo, or returns null if it is not an image.
+     */
+    public static Photo read(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            return null;
+        }
+        int orientation = readOrientation(file);
+        int longest = Math.max(image.getWidth(), image.getHeight());
+        String name = file.getName().toLowerCase();
+        if (longest <= MAX_EDGE && orientation == 1 && (name.endsWith(".jpg") || name.endsWith(".jpeg"))) {
+            return new Photo(image, file.length(), Files.readAllBytes(file.toPath()));
+        }
+        if (longest > MAX_EDGE) {
+            double scale = (double) MAX_EDGE / longest;
+            image = ImageResampler.resize(image, Math.max(1, (int) Math.round(image.getWidth() * scale)),
+                    Math.max(1, (int) Math.round(image.getHeight() * scale)), BufferedImage.TYPE_INT_RGB);
+        }
+        return new Photo(orient(image, orientation), file.length(), null);
+    }
+
+    /**
+     * Stores the master and the avatar for a visitor and returns the bytes
+     * they take. A small JPEG that needed no changes is kept as it was if
+     * re-encoding would not make it smaller.
+     */
+    public long store(int visitorId, Photo photo) throws IOException {
+        byte[] master = jpeg(photo.image);
+        if (photo.original != null && photo.original.length <= master.length) {
+            master = photo.original;
+        }
+        byte[] avatar = jpeg(avatar(photo.image));
+        PhotoStore.getInstance().put(visitorId, master, avatar);
+        long stored = master.length + avatar.length;
+        photos.incrementAndGet();
+        sourceBytes.addAndGet(photo.sourceBytes);
+        storedBytes.addAndGet(stored);
+        return stored;
+    }
+
+    /**
+     * The middle square of a photo at avatar size.
+     */
+    static BufferedImage avatar(BufferedImage image) {
+        int side = Math.min(image.getWidth(), image.getHeight());
+        BufferedImage square = image.getSubimage((image.getWidth() - side) / 2, (image.getHeight() - side) / 2, side, side);
+        return ImageResampler.resize(square, AvatarCache.DIAMETER, AvatarCache.DIAMETER, BufferedImage.TYPE_INT_RGB);
+    }
+
+    static byte[] jpeg(BufferedImage image) throws IOException {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            // JPEG has no alpha; flatten onto white.
+            BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = rgb.createGraphics();
+            g2.drawImage(image, 0, 0, Color.WHITE, null);
+            g2.dispose();
+            image = rgb;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Applies an EXIF orientation (1 to 8) so the image is upright.
+     */
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean swap = orientation >= 5;
+        AffineTransform t = new AffineTransform();
+        switch (orientation) {
+            case 2:
+                t.translate(w, 0);
+                t.scale(-1, 1);
+                break;
+            case 3:
+                t.translate(w, h);
+                t.rotate(Math.PI);
+                break;
+            case 4:
+                t.translate(0, h);
+                t.scale(1, -1);
+                break;
+            case 5:
+                // Transpose: (x, y) -> (y, x).
+                t.setTransform(0, 1, 1, 0, 0, 0);
+                break;
+            case 6:
+                t.translate(h, 0);
+                t.rotate(Math.PI / 2);
+                break;
+            case 7:
+                // Transverse: (x, y) -> (h - y, w - x).
+                t.setTransform(0, -1, -1, 0, h, w);
+                break;
+            default:
+                t.translate(0, w);
+                t.rotate(-Math.PI / 2);
+                break;
+        }
+        BufferedImage upright = new BufferedImage(swap ? h : w, swap ? w : h,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = upright.createGraphics();
+        g2.drawImage(image, t, null);
+        g2.dispose();
+        return upright;
+    }
+
+    /**
+     * The EXIF orientation of a JPEG, or 1 if it has none or is not a JPEG.
+     * Reads only the headers before the image data.
+     */
+    static int readOrientation(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return 1;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (marker == 0xFFE1) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    int orientation = exifOrientation(segment);
+                    if (orientation != 0) {
+                        return orientation;
+                    }
+                } else {
+                    while (length > 0) {
+                        int skipped = in.skipBytes(length);
+                        if (skipped <= 0) {
+                            throw new EOFException();
+                        }
+                        length -= skipped;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            return 1;
+        }
+    }
+
+    /**
+     * The orientation tag of IFD0 in an APP1 segment, or 0 if it is not
+     * there.
+     */
+    private static int exifOrientation(byte[] segment) {
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f') {
+            return 0;
+        }
+        int tiff = 6;
+        boolean little = segment[tiff] == 'I';
+        long ifd = tiff + u32(segment, tiff + 4, little);
+        if (ifd + 2 > segment.length) {
+            return 0;
+        }
+        int count = u16(segment, (int) ifd, little);
+        for (int i = 0; i < count; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if (u16(segment, entry, little) == EXIF_ORIENTATION) {
+                return u16(segment, entry + 8, little);
+            }
+        }
+        return 0;
+    }
+
+    private static int u16(byte[] b, int i, boolean little) {
+        return little ? (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 : (b[i] & 0xff) << 8 | (b[i + 1] & 0xff);
+    }
+
+    private static long u32(byte[] b, int i, boolean little) {
+        return little ? (u16(b, i, true) | (long) u16(b, i + 2, true) << 16) : ((long) u16(b, i, false) << 16 | u16(b, i + 2, false));
+    }
+
+    public long getPhotos() {
+        return photos.get();
+    }
+
+    public long getBytesSaved() {
+        return sourceBytes.get() - storedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PhotoIngest[photos=%d, sourceBytes=%d, storedBytes=%d, saved=%d]",
+                photos.get(), sourceBytes.get(), storedBytes.get(), getBytesSaved());
+    }
+}
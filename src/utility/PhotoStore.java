@@ -0,0 +1,422 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import dao.ConnectionProvider;
+import dao.Visitor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import javax.swing.JOptionPane;
+
+/**
+ * Visitor photos, stored by content and looked up by visitor id.
+ *
+ * Each photo is a JPEG named after the first 16 bytes of its SHA-256 and
+ * kept under images/store/ab/cd/, two levels of 256 directories so a
+ * million photos leave about fifteen per directory. A file is written once,
+ * synced and renamed into place, and never changed; storing bytes that are
+ * already there, e.g. the same picture chosen for two visitors, writes
+ * nothing.
+ *
+ * images/store/manifest maps visitor ids to files: a 32-byte record at
+ * offset id * 32 holding the master's hash then the avatar's, zeros when
+ * the visitor has no photo. A lookup is one positional read, with no
+ * directory listing and nothing held in memory. Records never straddle a
+ * disk page, so one is never half written.
+ *
+ * Run this class with "import" to move photos from the old flat images/
+ * folder into the store, or with "gc" to delete files no visitor points
+ * to any more.
+ *
+ * @author ASUS
+ */
+public class PhotoStore {
+
+    private static final int HASH_BYTES = 16;
+    private static final int RECORD_BYTES = 2 * HASH_BYTES;
+    private static final int MASTER = 0;
+    private static final int AVATAR = HASH_BYTES;
+    private static final String STORE = "store";
+    private static final long GC_MIN_AGE_MILLIS = 3_600_000L;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final PhotoStore INSTANCE = new PhotoStore(new File(BDUtility.getPath("images"), STORE));
+
+    private final File root;
+    private FileChannel manifest = null;
+    private final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+    private final ThreadLocal<ByteBuffer> records = ThreadLocal.withInitial(() -> ByteBuffer.allocate(RECORD_BYTES));
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    public static PhotoStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param root the store directory; the manifest is created in it on
+     * first use
+     */
+    public PhotoStore(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Stores a visitor's master photo and avatar, replacing any they had.
+     * The files are on disk before the manifest points to them.
+     */
+    public void put(int visitorId, byte[] master, byte[] avatar) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.put(writeBlob(master)).put(writeBlob(avatar)).flip();
+        FileChannel channel = manifest();
+        long offset = offset(visitorId);
+        while (record.hasRemaining()) {
+            channel.write(record, offset + record.position());
+        }
+        channel.force(false);
+    }
+
+    /**
+     * The visitor's master photo, or null if the store has none for them.
+     */
+    public File master(int visitorId) throws IOException {
+        return blob(visitorId, MASTER);
+    }
+
+    /**
+     * The visitor's avatar, or null if the store has none for them.
+     */
+    public File avatar(int visitorId) throws IOException {
+        return blob(visitorId, AVATAR);
+    }
+
+    /**
+     * The master photo's path below images/, with '/' separators since it
+     * is saved in the visitor's row and read on every kiosk; null if the
+     * store has no photo for the visitor.
+     */
+    public String masterName(int visitorId) throws IOException {
+        byte[] record = record(visitorId);
+        return isEmpty(record, MASTER) ? null : STORE + '/' + relativePath(record, MASTER, '/');
+    }
+
+    /**
+     * The photo to show for a visitor: from the store, else the file their
+     * row names in images/, for visitors registered before there was a
+     * store. Null if there is neither.
+     */
+    public File masterOf(Visitor visitor) {
+        return stored(visitor, MASTER);
+    }
+
+    /**
+     * As {@link #masterOf(Visitor)} for the avatar. A visitor from before
+     * the store gets their full photo, which the caller crops.
+     */
+    public File avatarOf(Visitor visitor) {
+        return stored(visitor, AVATAR);
+    }
+
+    private File stored(Visitor visitor, int at) {
+        try {
+            File file = blob(visitor.getId(), at);
+            if (file != null) {
+                return file;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        String imageName = visitor.getImageName();
+        if (imageName == null || imageName.isEmpty()) {
+            return null;
+        }
+        File legacy = new File(BDUtility.getPath("images"), imageName);
+        return legacy.isFile() ? legacy : null;
+    }
+
+    /**
+     * Ids of the visitors with a stored photo, in ascending order. Reads
+     * the manifest front to back; no directory is listed.
+     */
+    public int[] ids() throws IOException {
+        IntStream.Builder ids = IntStream.builder();
+        scan((id, records, at) -> {
+            if (!isEmpty(records, at + MASTER)) {
+                ids.add(id);
+            }
+        });
+        return ids.build().toArray();
+    }
+
+    /**
+     * Receives each stored avatar from {@link #forEachAvatar}.
+     */
+    public interface AvatarVisitor {
+
+        void visit(int visitorId, byte[] hash, File file) throws IOException;
+    }
+
+    /**
+     * Calls {@code visitor} for every visitor with a stored avatar, in
+     * ascending id order, with the avatar's content hash and file.
+     */
+    public void forEachAvatar(AvatarVisitor visitor) throws IOException {
+        scan((id, records, at) -> {
+            if (!isEmpty(records, at + AVATAR)) {
+                visitor.visit(id, Arrays.copyOfRange(records, at + AVATAR, at + AVATAR + HASH_BYTES),
+                        new File(root, relativePath(records, at + AVATAR, File.separatorChar)));
+            }
+        });
+    }
+
+    private interface RecordVisitor {
+
+        void visit(int visitorId, byte[] records, int at) throws IOException;
+    }
+
+    private void scan(RecordVisitor visitor) throws IOException {
+        FileChannel channel = manifest();
+        ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * 2048);
+        long position = 0;
+        int id = 0;
+        try {
+            while (channel.read(chunk, position) > 0) {
+                int whole = chunk.position() / RECORD_BYTES * RECORD_BYTES;
+                if (whole == 0) {
+                    break;
+                }
+                byte[] bytes = chunk.array();
+                for (int i = 0; i < whole; i += RECORD_BYTES, id++) {
+                    visitor.visit(id, bytes, i);
+                }
+                // A record cut off by the end of the chunk is read again next time.
+                position += whole;
+                chunk.clear();
+            }
+        } catch (IOException ex) {
+            reset(channel);
+            throw ex;
+        }
+    }
+
+    /**
+     * Deletes stored files that no visitor points to and returns how many.
+     * Files younger than an hour are kept, as a put may have written them
+     * and not yet updated the manifest.
+     */
+    public int gc() throws IOException {
+        Set<String> live = new HashSet<>();
+        for (int id : ids()) {
+            byte[] record = record(id);
+            live.add(hex(record, MASTER));
+            if (!isEmpty(record, AVATAR)) {
+                live.add(hex(record, AVATAR));
+            }
+        }
+        long cutoff = System.currentTimeMillis() - GC_MIN_AGE_MILLIS;
+        int deleted = 0;
+        File[] outer = root.listFiles(File::isDirectory);
+        for (File first : outer == null ? new File[0] : outer) {
+            File[] inner = first.listFiles(File::isDirectory);
+            for (File second : inner == null ? new File[0] : inner) {
+                File[] blobs = second.listFiles();
+                for (File blob : blobs == null ? new File[0] : blobs) {
+                    String name = blob.getName();
+                    int dot = name.indexOf('.');
+                    if (dot > 0 && !live.contains(name.substring(0, dot))
+                            && blob.lastModified() < cutoff && blob.delete()) {
+                        deleted++;
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Writes a blob unless one with the same content is there, and returns
+     * its hash.
+     */
+    private byte[] writeBlob(byte[] data) throws IOException {
+        MessageDigest digest = sha256.get();
+        byte[] hash = Arrays.copyOf(digest.digest(data), HASH_BYTES);
+        File file = new File(root, relativePath(hash, 0, File.separatorChar));
+        if (file.length() == data.length) {
+            deduplicated.incrementAndGet();
+        } else {
+            AtomicFiles.write(file, data, true);
+            written.incrementAndGet();
+        }
+        return hash;
+    }
+
+    private File blob(int visitorId, int at) throws IOException {
+        lookups.incrementAndGet();
+        byte[] record = record(visitorId);
+        if (isEmpty(record, at)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        return new File(root, relativePath(record, at, File.separatorChar));
+    }
+
+    /**
+     * The visitor's manifest record; all zeros past the end of the file.
+     */
+    private byte[] record(int visitorId) throws IOException {
+        FileChannel channel = manifest();
+        ByteBuffer buffer = records.get();
+        buffer.clear();
+        long offset = offset(visitorId);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            reset(channel);
+            throw ex;
+        }
+        byte[] record = new byte[RECORD_BYTES];
+        System.arraycopy(buffer.array(), 0, record, 0, buffer.position());
+        return record;
+    }
+
+    private synchronized FileChannel manifest() throws IOException {
+        if (manifest == null) {
+            Files.createDirectories(root.toPath());
+            manifest = FileChannel.open(new File(root, "manifest").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return manifest;
+    }
+
+    /**
+     * Drops a manifest channel that failed, e.g. because the share went
+     * away, so the next call opens it again.
+     */
+    private synchronized void reset(FileChannel failed) {
+        if (manifest == failed) {
+            manifest = null;
+            try {
+                failed.close();
+            } catch (IOException ex) {
+                // Already broken.
+            }
+        }
+    }
+
+    private static long offset(int visitorId) {
+        if (visitorId < 0) {
+            throw new IllegalArgumentException("Visitor id " + visitorId);
+        }
+        return (long) visitorId * RECORD_BYTES;
+    }
+
+    private static boolean isEmpty(byte[] record, int at) {
+        for (int i = at; i < at + HASH_BYTES; i++) {
+            if (record[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * "ab/cd/abcd....jpg" for the hash at {@code at}.
+     */
+    private static String relativePath(byte[] hash, int at, char separator) {
+        String hex = hex(hash, at);
+        return hex.substring(0, 2) + separator + hex.substring(2, 4) + separator + hex + ".jpg";
+    }
+
+    private static String hex(byte[] bytes, int at) {
+        char[] chars = new char[HASH_BYTES * 2];
+        for (int i = 0; i < HASH_BYTES; i++) {
+            chars[2 * i] = HEX[(bytes[at + i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[at + i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PhotoStore[lookups=%d, misses=%d, written=%d, deduplicated=%d]",
+                lookups.get(), misses.get(), written.get(), deduplicated.get());
+    }
+
+    /**
+     * Moves each visitor's photo from the flat images/ folder into the
+     * store and points their row at it. The old files are left in place.
+     */
+    private static int importLegacy() throws Exception {
+        int imported = 0;
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new IOException("No database connection");
+            }
+            try (Statement st = con.createStatement();
+                    PreparedStatement update = con.prepareStatement("update userdetails set imageName = ? where id = ?")) {
+                ResultSet rs = st.executeQuery(
+                        "select id, imageName from userdetails where imageName is not null and imageName not like '" + STORE + "/%'");
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    File file = new File(BDUtility.getPath("images"), rs.getString(2));
+                    PhotoIngest.Photo photo = file.isFile() ? PhotoIngest.read(file) : null;
+                    if (photo == null) {
+                        continue;
+                    }
+                    PhotoIngest.getInstance().store(id, photo);
+                    update.setString(1, getInstance().masterName(id));
+                    update.setInt(2, id);
+                    update.executeUpdate();
+                    imported++;
+                }
+            }
+        }
+        return imported;
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length == 1 && "gc".equals(args[0])) {
+                JOptionPane.showMessageDialog(null, "Deleted " + getInstance().gc() + " unused photos");
+            } else if (args.length == 1 && "import".equals(args[0])) {
+                int imported = importLegacy();
+                JOptionPane.showMessageDialog(null, String.format("Imported %d photos. %s", imported, PhotoIngest.getInstance()));
+            } else {
+                JOptionPane.showMessageDialog(null, "Usage: PhotoStore import | gc");
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(null, ex);
+        }
+    }
+}
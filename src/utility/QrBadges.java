@@ -0,0 +1,46 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import com.google.zxing.WriterException;
+import dao.Visitor;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Badge QR codes: what a visitor's code contains, how it is rendered and
+ * where it is saved. Shared by the single-visitor and batch paths in
+ * GenerateQr so both produce the same files. Thread-safe.
+ *
+ * @author ASUS
+ */
+public class QrBadges {
+
+    private static final ThreadLocal<QrRenderer> RENDERER = ThreadLocal.withInitial(QrRenderer::fromConfig);
+
+    public static String payload(Visitor visitor) throws SQLException {
+        return BadgePayload.encode(visitor);
+    }
+
+    /**
+     * The payload signed with key {@code kid}, as returned by
+     * {@link BadgePayload#signingKeyId()}.
+     */
+    public static String payload(Visitor visitor, int kid) throws SQLException {
+        return BadgePayload.encode(visitor, kid);
+    }
+
+    /**
+     * Renders a badge as PNG with this thread's renderer.
+     */
+    public static byte[] renderPng(String payload) throws WriterException, IOException {
+        return QrRenderer.encodePng(RENDERER.get().render(payload));
+    }
+
+    public static File badgeFile(String email) {
+        return new File(BDUtility.getPath("qrCodes"), email + ".png");
+    }
+}
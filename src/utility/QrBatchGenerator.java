@@ -0,0 +1,162 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import dao.Visitor;
+import dao.VisitorSearch;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates badge QR codes for every visitor in a search and saves them to
+ * qrCodes/. Visitors are read in blocks, and each block is rendered on a
+ * fork-join pool while the next one is read from the database. Progress is
+ * reported a few times a second with the running throughput.
+ *
+ * @author ASUS
+ */
+public class QrBatchGenerator {
+
+    private static final int THREADS = Integer.getInteger("vms.qrBatch.threads", Runtime.getRuntime().availableProcessors());
+    private static final int FETCH_SIZE = 500;
+    /** Blocks this small are rendered in one task instead of being split further. */
+    private static final int SPLIT_THRESHOLD = 16;
+    private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+
+    public interface Listener {
+
+        /**
+         * Called from a worker thread, at most a few times a second and once
+         * at the end.
+         */
+        void progress(int done, int failed, int total, double codesPerSecond);
+    }
+
+    private final VisitorSearch search;
+    private final Listener listener;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong lastReport = new AtomicLong();
+    private volatile boolean cancelled = false;
+    private int total = 0;
+    private int kid;
+    private long startNanos;
+    private long elapsedNanos;
+
+    public QrBatchGenerator(VisitorSearch search, Listener listener) {
+        this.search = search;
+        this.listener = listener;
+    }
+
+    /**
+     * Generates all badges and returns when they are written or the batch
+     * was cancelled. Call off the EDT.
+     */
+    public void run() throws SQLException {
+        startNanos = System.nanoTime();
+        lastReport.set(startNanos);
+        total = search.count();
+        // One key for the whole batch, so no render thread waits on the database for it.
+        kid = BadgePayload.signingKeyId();
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, THREADS), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("QrBatchGenerator-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+        try {
+            int offset = 0;
+            List<Visitor> block = search.fetch(offset, FETCH_SIZE);
+            while (!block.isEmpty() && !cancelled) {
+                ForkJoinTask<Void> rendering = pool.submit(new RenderTask(block, 0, block.size()));
+                offset += block.size();
+                List<Visitor> next = block.size() < FETCH_SIZE ? new ArrayList<>() : search.fetch(offset, FETCH_SIZE);
+                rendering.join();
+                block = next;
+            }
+        } finally {
+            pool.shutdownNow();
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+        listener.progress(done.get(), failed.get(), total, getCodesPerSecond());
+    }
+
+    public void cancel() {
+        cancelled = true;
+        search.cancel();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getDone() {
+        return done.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getCodesPerSecond() {
+        long nanos = elapsedNanos != 0 ? elapsedNanos : System.nanoTime() - startNanos;
+        return nanos == 0 ? 0 : done.get() * 1e9 / nanos;
+    }
+
+    private void generate(Visitor visitor) {
+        if (cancelled) {
+            return;
+        }
+        try {
+            byte[] png = QrBadges.renderPng(QrBadges.payload(visitor, kid));
+            AtomicFiles.write(QrBadges.badgeFile(visitor.getEmail()), png);
+            done.incrementAndGet();
+        } catch (Exception ex) {
+            failed.incrementAndGet();
+            ex.printStackTrace();
+        }
+        long now = System.nanoTime();
+        long last = lastReport.get();
+        if (now - last >= PROGRESS_INTERVAL_NANOS && lastReport.compareAndSet(last, now)) {
+            listener.progress(done.get(), failed.get(), total, getCodesPerSecond());
+        }
+    }
+
+    private class RenderTask extends RecursiveAction {
+
+        private final List<Visitor> visitors;
+        private final int from;
+        private final int to;
+
+        RenderTask(List<Visitor> visitors, int from, int to) {
+            this.visitors = visitors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    generate(visitors.get(i));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RenderTask(visitors, from, mid), new RenderTask(visitors, mid, to));
+        }
+    }
+}
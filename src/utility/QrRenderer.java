@@ -0,0 +1,105 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders QR codes with ZXing straight into a 1-bit image that is kept and
+ * refilled for the next code of the same size. PNG is only produced when a
+ * code is saved. Not thread-safe; use one renderer per thread.
+ *
+ * Defaults come from vms.qr.ecLevel (L, M, Q or H), vms.qr.moduleSize
+ * (pixels per module, 0 to fit the badge preview) and vms.qr.quietZone
+ * (modules of white border).
+ *
+ * @author ASUS
+ */
+public class QrRenderer {
+
+    /** Largest size a code is fitted into when no module size is set. */
+    public static final int FIT_SIZE = 286;
+
+    private final QRCodeWriter writer = new QRCodeWriter();
+    private final Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    private final int moduleSize;
+    private final int quietZone;
+    private BufferedImage image = null;
+    private byte[] row = new byte[0];
+
+    public static QrRenderer fromConfig() {
+        return new QrRenderer(ErrorCorrectionLevel.valueOf(System.getProperty("vms.qr.ecLevel", "L")),
+                Integer.getInteger("vms.qr.moduleSize", 0), Integer.getInteger("vms.qr.quietZone", 4));
+    }
+
+    public QrRenderer(ErrorCorrectionLevel ecLevel, int moduleSize, int quietZone) {
+        this.moduleSize = moduleSize;
+        this.quietZone = quietZone;
+        hints.put(EncodeHintType.ERROR_CORRECTION, ecLevel);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        // The quiet zone is drawn here, so the matrix is one bit per module with no margin.
+        hints.put(EncodeHintType.MARGIN, 0);
+    }
+
+    /**
+     * Renders a code. The returned image is reused by the next call that
+     * produces a code of the same size, so copy it to keep it.
+     */
+    public BufferedImage render(String payload) throws WriterException {
+        BitMatrix matrix = writer.encode(payload, BarcodeFormat.QR_CODE, 0, 0, hints);
+        int modules = matrix.getWidth();
+        int total = modules + 2 * quietZone;
+        int scale = moduleSize > 0 ? moduleSize : Math.max(1, FIT_SIZE / total);
+        int size = total * scale;
+
+        if (image == null || image.getWidth() != size) {
+            image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_BINARY);
+        }
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = (size + 7) / 8;
+        if (row.length != stride) {
+            row = new byte[stride];
+        }
+
+        // In the default 1-bit palette 0 is black and 1 is white.
+        Arrays.fill(pixels, (byte) 0xff);
+        int offset = quietZone * scale;
+        for (int y = 0; y < modules; y++) {
+            Arrays.fill(row, (byte) 0xff);
+            for (int x = 0; x < modules; x++) {
+                if (matrix.get(x, y)) {
+                    int px = offset + x * scale;
+                    for (int i = 0; i < scale; i++, px++) {
+                        row[px >> 3] &= (byte) ~(0x80 >> (px & 7));
+                    }
+                }
+            }
+            int firstLine = offset + y * scale;
+            for (int i = 0; i < scale; i++) {
+                System.arraycopy(row, 0, pixels, (firstLine + i) * stride, stride);
+            }
+        }
+        return image;
+    }
+
+    public static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,685 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * The badge files in qrCodes/ with a small grey thumbnail of each, kept in
+ * qrCodes/.thumbs so the QR browser can list the folder without touching
+ * every file. The saved index is loaded first, then checked against the
+ * folder once and kept up to date with a WatchService.
+ *
+ * Thumbnails are made on a background thread, visible rows first; while a
+ * listener is attached the rest are filled in behind them. Each record in
+ * the thumbnail file starts with a check of the file it was made from, so
+ * a record that does not match is made again instead of shown. Decoded
+ * previews of the last few badges opened are kept in memory.
+ *
+ * @author ASUS
+ */
+public class QrThumbnailIndex {
+
+    public static final int THUMB_SIZE = 32;
+
+    private static final int MAGIC = 0x51524958;
+    private static final int VERSION = 1;
+    private static final int RECORD_BYTES = 8 + THUMB_SIZE * THUMB_SIZE;
+    private static final int MAX_THUMBNAILS = Integer.getInteger("vms.qrThumbs.cached", 2048);
+    private static final int MAX_PREVIEWS = Integer.getInteger("vms.qrThumbs.previews", 32);
+    private static final long SAVE_INTERVAL_MILLIS = 10_000;
+
+    private static final QrThumbnailIndex INSTANCE = new QrThumbnailIndex(new File(BDUtility.getPath("qrCodes")));
+
+    /**
+     * A badge file. A new entry replaces this one when the file changes, so
+     * an entry can be used as a key for anything made from the file.
+     */
+    public static class Entry {
+
+        public final String name;
+        public final long length;
+        public final long modified;
+        /** Record in the thumbnail file, or -1. Only changed on the worker. */
+        int slot = -1;
+
+        Entry(String name, long length, long modified) {
+            this.name = name;
+            this.length = length;
+            this.modified = modified;
+        }
+
+        public String getEmail() {
+            return name.substring(0, name.length() - ".png".length());
+        }
+
+        long check() {
+            return ((long) name.hashCode() << 32) ^ modified ^ length;
+        }
+    }
+
+    public interface Listener {
+
+        /**
+         * Files were added, changed or removed. Called from a background
+         * thread.
+         */
+        void entriesChanged();
+
+        /**
+         * A thumbnail asked for with {@link #thumbnail(Entry)} is ready.
+         * Called from a background thread.
+         */
+        void thumbnailReady(Entry entry);
+    }
+
+    private final File dir;
+    private final File indexFile;
+    private final File thumbsFile;
+
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    private final BitSet usedSlots = new BitSet();
+    private final Set<Entry> unreadable = new HashSet<>();
+    private final LinkedHashMap<Entry, ImageIcon> thumbnails = new LinkedHashMap<Entry, ImageIcon>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Entry, ImageIcon> eldest) {
+            return size() > MAX_THUMBNAILS;
+        }
+    };
+    private final LinkedHashMap<Entry, BufferedImage> previews = new LinkedHashMap<Entry, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Entry, BufferedImage> eldest) {
+            return size() > MAX_PREVIEWS;
+        }
+    };
+
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    /** Thumbnails asked for, newest last; the worker always takes the newest. */
+    private final Deque<Entry> requests = new ArrayDeque<>();
+    private final Set<Entry> requested = new HashSet<>();
+    private Runnable previewTask = null;
+    private String backfillAfter = "";
+    private boolean draining = false;
+    private boolean opened = false;
+    private boolean dirty = false;
+    private long lastSaved = System.currentTimeMillis();
+    private volatile Listener listener = null;
+    private FileChannel thumbs = null;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "QrThumbnailIndex Worker");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong previewHits = new AtomicLong();
+    private final AtomicLong previewLoads = new AtomicLong();
+
+    public static QrThumbnailIndex getInstance() {
+        return INSTANCE;
+    }
+
+    public QrThumbnailIndex(File dir) {
+        this.dir = dir;
+        this.indexFile = new File(dir, ".thumbs" + File.separator + "index");
+        this.thumbsFile = new File(dir, ".thumbs" + File.separator + "thumbs");
+    }
+
+    /**
+     * Loads the index and starts watching the folder, the first time it is
+     * called. Returns straight away; the listener hears when entries arrive.
+     */
+    public synchronized void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        submit(() -> {
+            load();
+            notifyEntriesChanged();
+            watch();
+            scan();
+        });
+    }
+
+    /**
+     * Sets who hears about changes; null when the browser closes, which
+     * also stops the backfill and saves the index.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        synchronized (this) {
+            if (listener == null) {
+                requests.clear();
+                requested.clear();
+                submit(this::save);
+            } else {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * All badge files, sorted by name.
+     */
+    public synchronized List<Entry> snapshot() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Returns the thumbnail if it is in memory; otherwise asks for it and
+     * returns null, and the listener hears when it is ready.
+     */
+    public synchronized ImageIcon thumbnail(Entry entry) {
+        ImageIcon icon = thumbnails.get(entry);
+        if (icon != null) {
+            hits.incrementAndGet();
+            return icon;
+        }
+        if (!unreadable.contains(entry) && requested.add(entry)) {
+            requests.addLast(entry);
+            if (requests.size() > MAX_THUMBNAILS) {
+                requested.remove(requests.removeFirst());
+            }
+            schedule();
+        }
+        return null;
+    }
+
+    /**
+     * Hands a copy of the badge scaled to {@code size} pixels square to
+     * {@code done}: right away if it was opened recently, otherwise from the
+     * worker ahead of any thumbnails. Only the latest request is kept, so
+     * clicking through the list does not queue up stale previews.
+     */
+    public void preview(Entry entry, int size, Consumer<BufferedImage> done) {
+        BufferedImage cached;
+        synchronized (this) {
+            cached = previews.get(entry);
+        }
+        if (cached != null && cached.getWidth() == size) {
+            previewHits.incrementAndGet();
+            done.accept(cached);
+            return;
+        }
+        synchronized (this) {
+            previewTask = () -> {
+                previewLoads.incrementAndGet();
+                try {
+                    BufferedImage image = ImageIO.read(new File(dir, entry.name));
+                    if (image != null) {
+                        BufferedImage scaled = scale(image, size);
+                        synchronized (this) {
+                            previews.put(entry, scaled);
+                        }
+                        done.accept(scaled);
+                    }
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            };
+            schedule();
+        }
+    }
+
+    private synchronized void submit(Runnable task) {
+        tasks.addLast(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!draining) {
+            draining = true;
+            worker.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = nextTask();
+                if (task == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Preview first, then index work, then the newest thumbnail asked for,
+     * then thumbnails nobody asked for yet while the browser is open.
+     */
+    private Runnable nextTask() {
+        if (previewTask != null) {
+            Runnable task = previewTask;
+            previewTask = null;
+            return task;
+        }
+        if (!tasks.isEmpty()) {
+            return tasks.removeFirst();
+        }
+        if (dirty && System.currentTimeMillis() - lastSaved > SAVE_INTERVAL_MILLIS) {
+            return this::save;
+        }
+        Entry entry = requests.pollLast();
+        if (entry != null) {
+            requested.remove(entry);
+            return () -> loadThumbnail(entry);
+        }
+        if (listener != null && thumbs != null) {
+            for (Entry next : entries.tailMap(backfillAfter, false).values()) {
+                backfillAfter = next.name;
+                if (next.slot < 0 && !unreadable.contains(next)) {
+                    return () -> loadThumbnail(next);
+                }
+            }
+        }
+        return dirty ? this::save : null;
+    }
+
+    private void load() {
+        if (indexFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readInt() == THUMB_SIZE) {
+                    int count = in.readInt();
+                    TreeMap<String, Entry> loaded = new TreeMap<>();
+                    BitSet slots = new BitSet();
+                    for (int i = 0; i < count; i++) {
+                        Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong());
+                        entry.slot = in.readInt();
+                        if (entry.slot >= 0) {
+                            slots.set(entry.slot);
+                        }
+                        loaded.put(entry.name, entry);
+                    }
+                    synchronized (this) {
+                        entries.putAll(loaded);
+                        usedSlots.or(slots);
+                    }
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        try {
+            Files.createDirectories(thumbsFile.getParentFile().toPath());
+            FileChannel channel = FileChannel.open(thumbsFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            synchronized (this) {
+                thumbs = channel;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void save() {
+        byte[] data;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            lastSaved = System.currentTimeMillis();
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entries.size() * 48);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes, 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(THUMB_SIZE);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.name);
+                    out.writeLong(entry.length);
+                    out.writeLong(entry.modified);
+                    out.writeInt(entry.slot);
+                }
+                out.flush();
+                data = bytes.toByteArray();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        try {
+            if (thumbs != null) {
+                thumbs.force(false);
+            }
+            AtomicFiles.write(indexFile, data);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Brings the index in line with the folder after it was loaded, or after
+     * the watcher lost events.
+     */
+    private void scan() {
+        Map<String, BasicFileAttributes> found = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath(), "*.png")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (isBadge(name)) {
+                    try {
+                        found.put(name, Files.readAttributes(path, BasicFileAttributes.class));
+                    } catch (NoSuchFileException ex) {
+                        // Deleted while listing.
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return;
+        }
+        boolean changed = false;
+        synchronized (this) {
+            for (Entry entry : new ArrayList<>(entries.values())) {
+                if (!found.containsKey(entry.name)) {
+                    remove(entry);
+                    changed = true;
+                }
+            }
+            for (Map.Entry<String, BasicFileAttributes> file : found.entrySet()) {
+                changed |= update(file.getKey(), file.getValue());
+            }
+        }
+        if (changed) {
+            notifyEntriesChanged();
+        }
+    }
+
+    private void refresh(Collection<String> names) {
+        boolean changed = false;
+        for (String name : names) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(new File(dir, name).toPath(), BasicFileAttributes.class);
+            } catch (IOException ex) {
+                attributes = null;
+            }
+            synchronized (this) {
+                if (attributes != null) {
+                    changed |= update(name, attributes);
+                } else if (entries.containsKey(name)) {
+                    remove(entries.get(name));
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            notifyEntriesChanged();
+        }
+    }
+
+    private boolean update(String name, BasicFileAttributes attributes) {
+        long length = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Entry entry = entries.get(name);
+        if (entry != null && entry.length == length && entry.modified == modified) {
+            return false;
+        }
+        if (entry != null) {
+            remove(entry);
+        }
+        entries.put(name, new Entry(name, length, modified));
+        backfillAfter = "";
+        dirty = true;
+        return true;
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.name);
+        if (entry.slot >= 0) {
+            usedSlots.clear(entry.slot);
+        }
+        thumbnails.remove(entry);
+        previews.remove(entry);
+        unreadable.remove(entry);
+        dirty = true;
+    }
+
+    private void watch() {
+        WatchService watcher;
+        try {
+            watcher = dir.toPath().getFileSystem().newWatchService();
+            dir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return;
+        }
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean overflow = false;
+                    Set<String> names = new HashSet<>();
+                    // Collect a burst of events, e.g. a batch generation, into one refresh.
+                    while (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                overflow = true;
+                            } else {
+                                String name = event.context().toString();
+                                if (isBadge(name)) {
+                                    names.add(name);
+                                }
+                            }
+                        }
+                        key.reset();
+                        key = watcher.poll(200, TimeUnit.MILLISECONDS);
+                    }
+                    if (overflow) {
+                        submit(this::scan);
+                    } else if (!names.isEmpty()) {
+                        submit(() -> refresh(names));
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, "QrThumbnailIndex Watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void loadThumbnail(Entry entry) {
+        int slot;
+        synchronized (this) {
+            if (entries.get(entry.name) != entry || thumbnails.containsKey(entry)) {
+                return;
+            }
+            slot = entry.slot;
+        }
+        BufferedImage thumb = slot >= 0 ? readThumbnail(slot, entry) : null;
+        if (thumb == null) {
+            thumb = generateThumbnail(entry);
+            if (thumb == null) {
+                synchronized (this) {
+                    unreadable.add(entry);
+                }
+                return;
+            }
+        }
+        synchronized (this) {
+            thumbnails.put(entry, new ImageIcon(thumb));
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.thumbnailReady(entry);
+        }
+    }
+
+    private BufferedImage readThumbnail(int slot, Entry entry) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        try {
+            while (record.hasRemaining() && thumbs.read(record, (long) slot * RECORD_BYTES + record.position()) > 0) {
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        record.flip();
+        if (record.remaining() < RECORD_BYTES || record.getLong() != entry.check()) {
+            return null;
+        }
+        reads.incrementAndGet();
+        BufferedImage thumb = new BufferedImage(THUMB_SIZE, THUMB_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        record.get(((DataBufferByte) thumb.getRaster().getDataBuffer()).getData());
+        return thumb;
+    }
+
+    private BufferedImage generateThumbnail(Entry entry) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new File(dir, entry.name));
+        } catch (IOException ex) {
+            return null;
+        }
+        if (image == null) {
+            return null;
+        }
+        BufferedImage thumb = shrink(image);
+        generated.incrementAndGet();
+
+        int slot;
+        synchronized (this) {
+            if (entries.get(entry.name) != entry || thumbs == null) {
+                return thumb;
+            }
+            slot = entry.slot >= 0 ? entry.slot : usedSlots.nextClearBit(0);
+            usedSlots.set(slot);
+            entry.slot = slot;
+            dirty = true;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putLong(entry.check());
+        record.put(((DataBufferByte) thumb.getRaster().getDataBuffer()).getData());
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                thumbs.write(record, (long) slot * RECORD_BYTES + record.position());
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return thumb;
+    }
+
+    /**
+     * Box-filters an image down to a grey thumbnail, so the modules of a QR
+     * code average out instead of aliasing.
+     */
+    static BufferedImage shrink(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width < THUMB_SIZE || height < THUMB_SIZE) {
+            return scale(image, THUMB_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        }
+        int[] sums = new int[THUMB_SIZE * THUMB_SIZE];
+        int[] counts = new int[THUMB_SIZE * THUMB_SIZE];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int base = (y * THUMB_SIZE / height) * THUMB_SIZE;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int gray = (((rgb >> 16) & 0xff) * 77 + ((rgb >> 8) & 0xff) * 150 + (rgb & 0xff) * 29) >> 8;
+                int i = base + x * THUMB_SIZE / width;
+                sums[i] += gray;
+                counts[i]++;
+            }
+        }
+        BufferedImage thumb = new BufferedImage(THUMB_SIZE, THUMB_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) thumb.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (sums[i] / counts[i]);
+        }
+        return thumb;
+    }
+
+    static BufferedImage scale(BufferedImage image, int size) {
+        return scale(image, size, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int size, int type) {
+        BufferedImage scaled = new BufferedImage(size, size, type);
+        Graphics2D g2 = scaled.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.drawImage(image, 0, 0, size, size, null);
+        g2.dispose();
+        return scaled;
+    }
+
+    private static boolean isBadge(String name) {
+        return name.endsWith(".png") && !name.startsWith(".");
+    }
+
+    private void notifyEntriesChanged() {
+        Listener current = listener;
+        if (current != null) {
+            current.entriesChanged();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("QrThumbnailIndex[entries=%d, thumbnails=%d/%d, hits=%d, reads=%d, generated=%d, previewHits=%d, previewLoads=%d]",
+                entries.size(), usedSlots.cardinality(), thumbnails.size(), hits.get(), reads.get(), generated.get(),
+                previewHits.get(), previewLoads.get());
+    }
+}
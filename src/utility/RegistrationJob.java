@@ -0,0 +1,283 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import dao.ConnectionProvider;
+import dao.Visitor;
+import dao.VisitorDirectory;
+import dao.VisitorSearchIndex;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registers a visitor off the EDT: checks the email is free, writes the
+ * row, then stores the photo through {@link PhotoIngest} on a background
+ * thread, so the form can take the next visitor as soon as the row is in.
+ * The row's imageName is set once the photo is in {@link PhotoStore}, so it
+ * never points at a file that is not there.
+ *
+ * The email check is only a fast path: another kiosk may register the
+ * same email in between, and the unique key on email turns that insert
+ * into DUPLICATE_EMAIL as well.
+ *
+ * Every step is timed, for this job and across all jobs.
+ *
+ * @author ASUS
+ */
+public class RegistrationJob {
+
+    public enum Step {
+        CHECK_EMAIL("Checking email"), INSERT("Saving visitor"), PHOTO("Saving photo");
+
+        public final String label;
+
+        Step(String label) {
+            this.label = label;
+        }
+    }
+
+    public enum Result {
+        REGISTERED, DUPLICATE_EMAIL
+    }
+
+    public interface Listener {
+
+        /**
+         * A step started. Called from a background thread.
+         */
+        void progress(Step step);
+
+        /**
+         * A registered visitor's photo is saved, or there was none;
+         * {@code error} is null on success. Called from a background thread.
+         */
+        void finished(RegistrationJob job, Exception error);
+    }
+
+    /**
+     * Latencies of one step across all jobs.
+     */
+    private static class StepStats {
+
+        private final String name;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        StepStats(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            long n = count.get();
+            return String.format("%s[count=%d, avg=%.2fms, max=%.2fms]", name, n,
+                    n == 0 ? 0 : totalNanos.get() / 1_000_000.0 / n, maxNanos.get() / 1_000_000.0);
+        }
+    }
+
+    private static final StepStats[] STATS = new StepStats[Step.values().length];
+    private static final ExecutorService PHOTOS = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "RegistrationJob Photos");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        for (Step step : Step.values()) {
+            STATS[step.ordinal()] = new StepStats(step.name().toLowerCase());
+        }
+    }
+
+    private final Visitor details;
+    private final PhotoIngest.Photo photo;
+    private final Listener listener;
+    private final long[] stepNanos = new long[Step.values().length];
+    private volatile Visitor visitor = null;
+    private volatile long storedBytes = 0;
+
+    /**
+     * @param details the visitor to register; the id and image name are
+     * ignored
+     * @param photo the photo from {@link PhotoIngest#read}, or null
+     */
+    public RegistrationJob(Visitor details, PhotoIngest.Photo photo, Listener listener) {
+        this.details = details;
+        this.photo = photo;
+        this.listener = listener;
+    }
+
+    /**
+     * Writes the row and returns once it is in; the photo is still being
+     * saved then. Call off the EDT.
+     */
+    public Result run() throws SQLException {
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            long start = begin(Step.CHECK_EMAIL);
+            boolean taken;
+            try (PreparedStatement check = con.prepareStatement("select 1 from userdetails where email = ? limit 1")) {
+                check.setString(1, details.getEmail());
+                taken = check.executeQuery().next();
+            }
+            end(Step.CHECK_EMAIL, start);
+            if (taken) {
+                return Result.DUPLICATE_EMAIL;
+            }
+
+            start = begin(Step.INSERT);
+            try (PreparedStatement insert = con.prepareStatement("INSERT INTO userdetails (name, gender, email, contact, hostEmployeeDetails, companyName, country, uniqueregid, imageName) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                insert.setString(1, details.getName());
+                insert.setString(2, details.getGender());
+                insert.setString(3, details.getEmail());
+                insert.setString(4, details.getContact());
+                insert.setString(5, details.getHostEmployeeDetails());
+                insert.setString(6, details.getCompanyName());
+                insert.setString(7, details.getCountry());
+                insert.setString(8, details.getUniqueRegId());
+                insert.setString(9, null);
+                try {
+                    insert.executeUpdate();
+                } catch (SQLIntegrityConstraintViolationException ex) {
+                    if (!isDuplicateEmail(ex)) {
+                        throw ex;
+                    }
+                    // Registered elsewhere since the check.
+                    end(Step.INSERT, start);
+                    return Result.DUPLICATE_EMAIL;
+                }
+                ResultSet keys = insert.getGeneratedKeys();
+                if (keys.next()) {
+                    visitor = withImage(keys.getInt(1), null);
+                    VisitorDirectory.getInstance().put(visitor);
+                    VisitorSearchIndex.getInstance().add(visitor);
+                }
+            }
+            end(Step.INSERT, start);
+        }
+        if (photo == null || visitor == null) {
+            listener.finished(this, null);
+        } else {
+            PHOTOS.execute(this::savePhoto);
+        }
+        return Result.REGISTERED;
+    }
+
+    /**
+     * Whether the insert broke the unique key on email, rather than some
+     * other constraint. Tables created from the README have the key under
+     * the column's own name.
+     */
+    private static boolean isDuplicateEmail(SQLIntegrityConstraintViolationException ex) {
+        String message = String.valueOf(ex.getMessage());
+        return ex.getErrorCode() == 1062 && (message.contains("uk_userdetails_email")
+                || message.endsWith("key 'email'") || message.endsWith("key 'userdetails.email'"));
+    }
+
+    private void savePhoto() {
+        long start = begin(Step.PHOTO);
+        Exception error = null;
+        try {
+            storedBytes = PhotoIngest.getInstance().store(visitor.getId(), photo);
+            AvatarCache.getInstance().invalidate(visitor);
+            setImageName(PhotoStore.getInstance().masterName(visitor.getId()));
+        } catch (Exception ex) {
+            error = ex;
+        }
+        end(Step.PHOTO, start);
+        listener.finished(this, error);
+    }
+
+    private void setImageName(String imageName) throws SQLException {
+        try (Connection con = ConnectionProvider.getCon()) {
+            if (con == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement ps = con.prepareStatement("update userdetails set imageName = ? where id = ?")) {
+                ps.setString(1, imageName);
+                ps.setInt(2, visitor.getId());
+                ps.executeUpdate();
+            }
+        }
+        visitor = withImage(visitor.getId(), imageName);
+        VisitorDirectory.getInstance().put(visitor);
+    }
+
+    private Visitor withImage(int id, String imageName) {
+        return new Visitor(id, details.getName(), details.getGender(), details.getEmail(), details.getContact(),
+                details.getHostEmployeeDetails(), details.getCompanyName(), details.getCountry(),
+                details.getUniqueRegId(), imageName);
+    }
+
+    private long begin(Step step) {
+        listener.progress(step);
+        return System.nanoTime();
+    }
+
+    private void end(Step step, long start) {
+        long nanos = System.nanoTime() - start;
+        stepNanos[step.ordinal()] = nanos;
+        STATS[step.ordinal()].record(nanos);
+    }
+
+    /**
+     * The registered visitor, or null before the row is written.
+     */
+    public Visitor getVisitor() {
+        return visitor;
+    }
+
+    /**
+     * Bytes the photo was chosen at less the bytes stored for it, or 0
+     * before it is stored.
+     */
+    public long getPhotoBytesSaved() {
+        return storedBytes == 0 ? 0 : photo.sourceBytes - storedBytes;
+    }
+
+    /**
+     * How long each step of this job took and what the photo saved, e.g.
+     * "RegistrationJob[email=a@b.c, check_email=3ms, insert=12ms,
+     * photo=840ms, photoKBSaved=2310]".
+     */
+    @Override
+    public String toString() {
+        StringBuilder timings = new StringBuilder("RegistrationJob[email=").append(details.getEmail());
+        for (Step step : Step.values()) {
+            if (stepNanos[step.ordinal()] != 0) {
+                timings.append(", ").append(STATS[step.ordinal()].name).append('=')
+                        .append(stepNanos[step.ordinal()] / 1_000_000).append("ms");
+            }
+        }
+        return timings.append(", photoKBSaved=").append(getPhotoBytesSaved() / 1024).append(']').toString();
+    }
+
+    /**
+     * Step latencies across every job so far.
+     */
+    public static String stats() {
+        StringBuilder stats = new StringBuilder("RegistrationJob");
+        for (StepStats stage : STATS) {
+            stats.append(' ').append(stage);
+        }
+        return stats.toString();
+    }
+}
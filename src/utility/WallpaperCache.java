@@ -0,0 +1,127 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package utility;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * Form wallpapers decoded and scaled once per (resource, width, height)
+ * and shared by every window that opens at that size. Login warms the
+ * sizes the other forms use while the user types, so opening a form is a
+ * lookup. A form that opens while its wallpaper is still being warmed
+ * waits for that instead of loading it again.
+ *
+ * There are only a handful of sizes, so nothing is evicted.
+ *
+ * @author ASUS
+ */
+public class WallpaperCache {
+
+    private static final WallpaperCache INSTANCE = new WallpaperCache();
+
+    private final ConcurrentHashMap<String, FutureTask<BufferedImage>> images = new ConcurrentHashMap<>();
+    private final ExecutorService warmer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "WallpaperCache Warmer");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    public static WallpaperCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The wallpaper scaled to the given size. The image is shared, so do not
+     * draw on it.
+     */
+    public BufferedImage get(String resource, int width, int height) throws IOException {
+        FutureTask<BufferedImage> task = task(resource, width, height, null);
+        if (task.isDone()) {
+            hits.incrementAndGet();
+        }
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            images.remove(key(resource, width, height), task);
+            throw new IOException("Could not load " + resource, ex.getCause());
+        }
+    }
+
+    /**
+     * Decodes a wallpaper once on a background thread and scales it to each
+     * of the given sizes.
+     */
+    public void warmAsync(String resource, Dimension... sizes) {
+        warmer.execute(() -> {
+            BufferedImage[] source = new BufferedImage[1];
+            for (Dimension size : sizes) {
+                try {
+                    task(resource, size.width, size.height, source).run();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * The task for a size, creating it if needed. A task made here loads
+     * the source itself unless {@code shared} already holds it, and leaves
+     * it there for the next size.
+     */
+    private FutureTask<BufferedImage> task(String resource, int width, int height, BufferedImage[] shared) {
+        return images.computeIfAbsent(key(resource, width, height), key -> new FutureTask<>(() -> {
+            BufferedImage source = shared != null ? shared[0] : null;
+            if (source == null) {
+                source = read(resource);
+                if (shared != null) {
+                    shared[0] = source;
+                }
+            }
+            loads.incrementAndGet();
+            return ImageResampler.resize(source, width, height, BufferedImage.TYPE_INT_RGB);
+        }));
+    }
+
+    private static BufferedImage read(String resource) throws IOException {
+        try (InputStream in = BDUtility.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("No resource " + resource);
+            }
+            BufferedImage image = ImageIO.read(in);
+            if (image == null) {
+                throw new IOException("Unreadable image " + resource);
+            }
+            return image;
+        }
+    }
+
+    private static String key(String resource, int width, int height) {
+        return resource + '@' + width + 'x' + height;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WallpaperCache[images=%d, hits=%d, loads=%d]", images.size(), hits.get(), loads.get());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * How AttendanceDao.mark binds the upsert and turns its affected rows into
+ * what the visitor is shown, and how reconcile merges offline scans into
+ * the row, against {@link FakeAttendanceTable}. The fake answers MARK_SQL
+ * with the outcome MySQL is documented to give, so these tests do not
+ * check the SQL itself or that it is atomic; that needs a MySQL server.
+ *
+ * @author ASUS
+ */
+public class AttendanceDaoTest {
+
+    private static final int USER = 42;
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 10, 18, 14, 30, 15);
+    private static final LocalDate TODAY = NOW.toLocalDate();
+
+    private final FakeAttendanceTable table = new FakeAttendanceTable();
+
+    @Test
+    public void insertedRowIsShownAsCheckIn() throws Exception {
+        AttendanceResult result = mark(NOW);
+
+        assertEquals(AttendanceResult.State.CHECKED_IN, result.getState());
+        assertEquals(NOW, result.getCheckIn());
+        assertNull(result.getCheckOut());
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void updatedRowIsShownAsCheckOut() throws Exception {
+        table.put(USER, TODAY, NOW.minusMinutes(65), null);
+
+        AttendanceResult result = mark(NOW);
+
+        assertEquals(AttendanceResult.State.CHECKED_OUT, result.getState());
+        assertEquals(NOW, result.getCheckOut());
+        assertEquals(Duration.ofMinutes(65), result.getWorkDuration());
+    }
+
+    @Test
+    public void cutOffIsBoundAsTheMinimumVisitBeforeTheScan() throws Exception {
+        table.put(USER, TODAY, NOW.minus(AttendanceDao.MINIMUM_VISIT), null);
+
+        assertEquals(AttendanceResult.State.CHECKED_OUT, mark(NOW).getState());
+    }
+
+    @Test
+    public void unchangedOpenRowIsShownAsTooEarly() throws Exception {
+        table.put(USER, TODAY, NOW.minusMinutes(2), null);
+
+        AttendanceResult result = mark(NOW);
+
+        assertEquals(AttendanceResult.State.TOO_EARLY, result.getState());
+        assertEquals(Duration.ofMinutes(3), result.getRemaining());
+        assertNull(table.get(USER, TODAY).checkOut);
+    }
+
+    @Test
+    public void unchangedClosedRowIsShownAsAlreadyCheckedOut() throws Exception {
+        LocalDateTime checkOut = NOW.minusMinutes(10);
+        table.put(USER, TODAY, NOW.minusHours(3), checkOut);
+
+        AttendanceResult result = mark(NOW);
+
+        assertEquals(AttendanceResult.State.ALREADY_CHECKED_OUT, result.getState());
+        assertEquals(checkOut, result.getCheckOut());
+        assertEquals(checkOut, table.get(USER, TODAY).checkOut);
+    }
+
+    @Test
+    public void rowIsKeyedByTheScanDate() throws Exception {
+        table.put(USER, TODAY.minusDays(1), NOW.minusDays(1), null);
+
+        assertEquals(AttendanceResult.State.CHECKED_IN, mark(NOW).getState());
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void reconcilingInOrderMatchesMarking() throws Exception {
+        LocalDateTime checkIn = NOW.minusHours(2);
+
+        assertEquals(1, reconcile(checkIn));
+        assertEquals(0, reconcile(checkIn.plusMinutes(2)));
+        assertEquals(2, reconcile(NOW));
+        assertEquals(0, reconcile(NOW.plusMinutes(1)));
+
+        FakeAttendanceTable.Row row = table.get(USER, TODAY);
+        assertEquals(checkIn, row.checkIn);
+        assertEquals(NOW, row.checkOut);
+        assertEquals("2 Hours and 0 Minutes", row.workDuration);
+    }
+
+    @Test
+    public void lateCheckInFromAnotherKioskMovesTheRow() throws Exception {
+        LocalDateTime early = NOW.minusMinutes(40);
+        // This kiosk reached the database first with a scan the offline one saw as a check-in.
+        table.put(USER, TODAY, NOW, null);
+
+        assertEquals(1, reconcile(early));
+
+        FakeAttendanceTable.Row row = table.get(USER, TODAY);
+        assertEquals(early, row.checkIn);
+        assertEquals(NOW, row.checkOut);
+        assertEquals("0 Hours and 40 Minutes", row.workDuration);
+    }
+
+    @Test
+    public void reconcilingGivesTheSameRowInAnyOrder() throws Exception {
+        LocalDateTime[] scans = {NOW.minusMinutes(50), NOW.minusMinutes(48), NOW.minusMinutes(20), NOW};
+        int[][] orders = {{0, 1, 2, 3}, {3, 2, 1, 0}, {2, 0, 3, 1}, {1, 3, 0, 2}};
+        for (int[] order : orders) {
+            FakeAttendanceTable fresh = new FakeAttendanceTable();
+            for (int i : order) {
+                try (Connection con = fresh.connect()) {
+                    AttendanceDao.reconcile(con, USER, scans[i]);
+                }
+            }
+            FakeAttendanceTable.Row row = fresh.get(USER, TODAY);
+            assertEquals(scans[0], row.checkIn);
+            assertEquals(scans[2], row.checkOut);
+        }
+    }
+
+    private int reconcile(LocalDateTime now) throws Exception {
+        try (Connection con = table.connect()) {
+            return AttendanceDao.reconcile(con, USER, now);
+        }
+    }
+
+    private AttendanceResult mark(LocalDateTime now) throws Exception {
+        try (Connection con = table.connect()) {
+            return AttendanceDao.mark(con, USER, now);
+        }
+    }
+}
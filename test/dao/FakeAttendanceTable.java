@@ -0,0 +1,179 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-memory userattendance with the unique (userid, date) key, behind
+ * stub Connections. It recognises the statements {@link AttendanceDao}
+ * sends for marking and reconciling by their text and applies the rules
+ * they encode in Java, returning affected rows as MySQL does with
+ * useAffectedRows=true. It stands in for the SQL; it does not run it.
+ *
+ * @author ASUS
+ */
+class FakeAttendanceTable {
+
+    /**
+     * One row; times are null where the column is.
+     */
+    static class Row {
+
+        LocalDateTime checkIn;
+        LocalDateTime checkOut;
+        String workDuration;
+
+        Row(LocalDateTime checkIn, LocalDateTime checkOut) {
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
+        }
+    }
+
+    private final Map<String, Row> rows = new HashMap<>();
+
+    synchronized void put(int userId, LocalDate date, LocalDateTime checkIn, LocalDateTime checkOut) {
+        rows.put(key(userId, date), new Row(checkIn, checkOut));
+    }
+
+    synchronized Row get(int userId, LocalDate date) {
+        return rows.get(key(userId, date));
+    }
+
+    synchronized int size() {
+        return rows.size();
+    }
+
+    /**
+     * A new connection to the table.
+     */
+    Connection connect() {
+        return (Connection) proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return statement((String) args[0]);
+                case "close":
+                case "commit":
+                case "rollback":
+                case "setAutoCommit":
+                    return null;
+                case "isClosed":
+                    return false;
+                case "getAutoCommit":
+                    return true;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private PreparedStatement statement(String sql) {
+        Object[] params = new Object[16];
+        return (PreparedStatement) proxy(PreparedStatement.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "setInt":
+                case "setDate":
+                case "setTimestamp":
+                case "setString":
+                    params[(Integer) args[0]] = args[1];
+                    return null;
+                case "executeUpdate":
+                    return update(sql, params);
+                case "executeQuery":
+                    return query(sql, params);
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private synchronized int update(String sql, Object[] p) throws SQLException {
+        if (sql.equals(AttendanceDao.MARK_SQL)) {
+            String key = key((Integer) p[1], ((Date) p[2]).toLocalDate());
+            Row row = rows.get(key);
+            if (row == null) {
+                rows.put(key, new Row(time(p[3]), null));
+                return 1;
+            }
+            if (row.checkOut == null && !row.checkIn.isAfter(time(p[7]))) {
+                row.checkOut = time(p[8]);
+                return 2;
+            }
+            return 0;
+        }
+        if (sql.startsWith("INSERT IGNORE INTO userattendance")) {
+            String key = key((Integer) p[1], ((Date) p[2]).toLocalDate());
+            if (rows.containsKey(key)) {
+                return 0;
+            }
+            rows.put(key, new Row(time(p[3]), null));
+            return 1;
+        }
+        if (sql.startsWith("update userattendance set checkin=?, checkout=?, workduration=?")) {
+            Row row = rows.get(key((Integer) p[4], ((Date) p[5]).toLocalDate()));
+            if (row == null) {
+                return 0;
+            }
+            row.checkIn = time(p[1]);
+            row.checkOut = time(p[2]);
+            row.workDuration = (String) p[3];
+            return 1;
+        }
+        throw new SQLException("Unexpected statement: " + sql);
+    }
+
+    private synchronized ResultSet query(String sql, Object[] p) throws SQLException {
+        if (sql.startsWith("select checkin, checkout from userattendance where userid=? and date=?")) {
+            Row row = rows.get(key((Integer) p[1], ((Date) p[2]).toLocalDate()));
+            Object[] values = row == null ? null
+                    : new Object[]{timestamp(row.checkIn), timestamp(row.checkOut)};
+            boolean[] before = {true};
+            return (ResultSet) proxy(ResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        boolean next = before[0] && values != null;
+                        before[0] = false;
+                        return next;
+                    case "getTimestamp":
+                        return "checkin".equals(args[0]) ? values[0] : values[1];
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+        throw new SQLException("Unexpected query: " + sql);
+    }
+
+    private static String key(int userId, LocalDate date) {
+        return userId + "/" + date;
+    }
+
+    private static LocalDateTime time(Object timestamp) {
+        return timestamp == null ? null : ((Timestamp) timestamp).toLocalDateTime();
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(FakeAttendanceTable.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}